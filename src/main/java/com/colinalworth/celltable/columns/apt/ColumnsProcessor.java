@@ -0,0 +1,324 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.apt;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+
+import com.colinalworth.celltable.columns.client.Columns;
+import com.colinalworth.celltable.columns.client.Columns.ConvertedWith;
+import com.colinalworth.celltable.columns.client.Columns.Format;
+import com.colinalworth.celltable.columns.client.Columns.Header;
+import com.colinalworth.celltable.columns.client.Columns.ServerAccessors;
+import com.colinalworth.celltable.columns.rebind.model.PropertyPaths;
+import com.colinalworth.celltable.columns.server.ColumnAccessors;
+import com.google.gwt.cell.client.Cell;
+import com.google.gwt.editor.client.Editor.Path;
+
+/**
+ * Generates a {@link ColumnAccessors} class for each {@link Columns} interface marked with
+ * {@link ServerAccessors}, which reads each column with direct calls to the same getters the
+ * generated Column would use, and applies the same DataConverter. Paths are followed as in
+ * {@link com.colinalworth.celltable.columns.rebind.model.ColumnSetModel}, using
+ * {@link PropertyPaths}.
+ *
+ * The processor is registered in META-INF/services, so it runs when this jar is on javac's
+ * processor path, or it may be named with <code>-processor</code>. DataConverters are created
+ * with their default constructor rather than GWT.create, so they must be able to run in the JVM.
+ *
+ * @author colin
+ *
+ */
+@SupportedAnnotationTypes("com.colinalworth.celltable.columns.client.Columns.ServerAccessors")
+public class ColumnsProcessor extends AbstractProcessor {
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith(ServerAccessors.class)) {
+			TypeElement columnsType = (TypeElement) element;
+			DeclaredType columnsInterface = findSupertype(columnsType.asType(), Columns.class.getName());
+			if (element.getKind() != ElementKind.INTERFACE || columnsInterface == null) {
+				error("@ServerAccessors can only be used on interfaces extending Columns", element);
+				continue;
+			}
+			List<? extends TypeMirror> typeArguments = columnsInterface.getTypeArguments();
+			if (typeArguments.isEmpty() || typeArguments.get(0).getKind() != TypeKind.DECLARED) {
+				// raw Columns, or a type variable, leave no bean type to read properties from
+				error("@ServerAccessors requires Columns to be parameterized with a class or interface, found "
+						+ columnsInterface, element);
+				continue;
+			}
+			DeclaredType beanType = (DeclaredType) typeArguments.get(0);
+
+			List<ColumnAccessor> columns = new ArrayList<ColumnAccessor>();
+			boolean failed = false;
+			for (ExecutableElement method : ElementFilter.methodsIn(columnsType.getEnclosedElements())) {
+				ColumnAccessor column = new ColumnAccessor(method, beanType);
+				failed |= column.failed;
+				columns.add(column);
+			}
+			if (failed) {
+				continue;
+			}
+
+			try {
+				write(columnsType, beanType, columns);
+			} catch (IOException e) {
+				error("Failed to write accessors: " + e.getMessage(), element);
+			}
+		}
+		return true;
+	}
+
+	private void write(TypeElement columnsType, DeclaredType beanType, List<ColumnAccessor> columns) throws IOException {
+		String packageName = processingEnv.getElementUtils().getPackageOf(columnsType).getQualifiedName().toString();
+		String simpleName = getNestedName(columnsType) + "_Accessors";
+		String qualifiedName = packageName.length() == 0 ? simpleName : packageName + "." + simpleName;
+		String bean = beanType.toString();
+
+		PrintWriter pw = new PrintWriter(processingEnv.getFiler().createSourceFile(qualifiedName, columnsType).openWriter());
+		if (packageName.length() != 0) {
+			pw.println("package " + packageName + ";");
+		}
+		pw.println();
+		String generated = getGeneratedAnnotation();
+		if (generated != null) {
+			pw.println("@" + generated + "(\"" + ColumnsProcessor.class.getName() + "\")");
+		}
+		pw.println(String.format("public class %1$s implements %2$s<%3$s> {", simpleName, ColumnAccessors.class.getName(), bean));
+
+		StringBuilder names = new StringBuilder();
+		StringBuilder headers = new StringBuilder();
+		for (ColumnAccessor c : columns) {
+			names.append(names.length() == 0 ? "" : ", ").append(quote(c.name));
+			headers.append(headers.length() == 0 ? "" : ", ").append(quote(c.header));
+		}
+		pw.println(String.format("\tprivate static final java.util.List<String> NAMES = java.util.Collections.unmodifiableList(java.util.Arrays.asList(new String[] {%1$s}));", names));
+		pw.println(String.format("\tprivate static final java.util.List<String> HEADERS = java.util.Collections.unmodifiableList(java.util.Arrays.asList(new String[] {%1$s}));", headers));
+		for (ColumnAccessor c : columns) {
+			if (c.converterType != null && c.converterScope != ConvertedWith.Scope.CALL) {
+				String modifiers = c.converterScope == ConvertedWith.Scope.SINGLETON ? "private static final" : "private final";
+				pw.println(String.format("\t%1$s %2$s %3$s_converter = new %2$s();", modifiers, c.converterType, c.name));
+			}
+		}
+		pw.println();
+
+		pw.println("\tpublic java.util.List<String> getColumnNames() {");
+		pw.println("\t\treturn NAMES;");
+		pw.println("\t}");
+		pw.println("\tpublic java.util.List<String> getHeaders() {");
+		pw.println("\t\treturn HEADERS;");
+		pw.println("\t}");
+
+		pw.println(String.format("\tpublic Object getValue(int column, %1$s row) {", bean));
+		pw.println("\t\tswitch (column) {");
+		for (int index = 0; index < columns.size(); index++) {
+			pw.println(String.format("\t\tcase %1$d:", index));
+			pw.println(String.format("\t\t\treturn %1$s(row);", columns.get(index).name));
+		}
+		pw.println("\t\t}");
+		pw.println("\t\tthrow new IndexOutOfBoundsException(\"No column \" + column);");
+		pw.println("\t}");
+
+		for (ColumnAccessor c : columns) {
+			pw.println(String.format("\tpublic %1$s %2$s(%3$s row) {", c.valueType, c.name, bean));
+			pw.println(String.format("\t\treturn %1$s;", c.getValueExpression("row")));
+			pw.println("\t}");
+		}
+		pw.println("}");
+		pw.close();
+	}
+
+	/**
+	 * Finds the @Generated annotation available to the code being compiled, which moved from
+	 * javax.annotation to javax.annotation.processing in Java 9, and was removed from the old
+	 * package in Java 11.
+	 * @return the annotation's qualified name, or null if neither is available
+	 */
+	private String getGeneratedAnnotation() {
+		for (String name : new String[] {"javax.annotation.processing.Generated", "javax.annotation.Generated"}) {
+			if (processingEnv.getElementUtils().getTypeElement(name) != null) {
+				return name;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The path, converter and types of a single column, read from its method.
+	 */
+	private class ColumnAccessor {
+		private final String name;
+		private final String header;
+		private final List<String> getters = new ArrayList<String>();
+		private final TypeMirror converterType;
+		private final ConvertedWith.Scope converterScope;
+		private TypeMirror valueType;
+		private boolean failed;
+
+		public ColumnAccessor(ExecutableElement method, DeclaredType beanType) {
+			this.name = method.getSimpleName().toString();
+			for (Method accessorMethod : ColumnAccessors.class.getMethods()) {
+				if (accessorMethod.getName().equals(name)) {
+					error("Column " + name + " would hide the ColumnAccessors method of the same name, rename it and use @Path", method);
+					failed = true;
+				}
+			}
+			this.header = method.getAnnotation(Header.class) == null ? name : method.getAnnotation(Header.class).value();
+			String path = method.getAnnotation(Path.class) == null ? name : method.getAnnotation(Path.class).value();
+
+			TypeMirror currentType = beanType;
+			for (String property : PropertyPaths.split(path)) {
+				ExecutableElement getter = currentType.getKind() == TypeKind.DECLARED ? findGetter((DeclaredType) currentType, property) : null;
+				if (getter == null) {
+					error("Type " + currentType + " doesn't seem to have get/is/has methods for the property " + property + " in path " + path, method);
+					failed = true;
+					break;
+				}
+				getters.add(getter.getSimpleName().toString());
+				currentType = ((ExecutableType) processingEnv.getTypeUtils().asMemberOf((DeclaredType) currentType, getter)).getReturnType();
+			}
+			this.valueType = currentType;
+
+			this.converterType = getAnnotationType(method, ConvertedWith.class.getCanonicalName());
+			this.converterScope = converterType == null ? null : method.getAnnotation(ConvertedWith.class).scope();
+			if (converterType != null) {
+				DeclaredType cell = findSupertype(method.getReturnType(), Cell.class.getName());
+				if (cell == null) {
+					error("Column methods must return a Cell", method);
+					failed = true;
+				} else {
+					valueType = cell.getTypeArguments().get(0);
+				}
+			}
+			if (method.getAnnotation(Format.class) != null) {
+				processingEnv.getMessager().printMessage(Kind.WARNING, "@Format uses the GWT NumberFormat, and is not applied to server accessors", method);
+			}
+		}
+
+		public String getValueExpression(String row) {
+			StringBuilder sb = new StringBuilder(row);
+			for (String getter : getters) {
+				sb.append(".").append(getter).append("()");
+			}
+			if (converterType == null) {
+				return sb.toString();
+			}
+			String converter = converterScope == ConvertedWith.Scope.CALL ? "new " + converterType + "()" : name + "_converter";
+			return String.format("%1$s.fromModelToCell(%2$s)", converter, sb);
+		}
+	}
+
+	private ExecutableElement findGetter(DeclaredType owner, String property) {
+		List<ExecutableElement> methods = ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers((TypeElement) owner.asElement()));
+		for (String getterName : PropertyPaths.getGetterNames(property)) {
+			for (ExecutableElement m : methods) {
+				if (m.getSimpleName().contentEquals(getterName) && m.getParameters().isEmpty()) {
+					return m;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds how the given type extends or implements the named type, so that its type arguments
+	 * can be read.
+	 * @param type
+	 * @param qualifiedName
+	 * @return the parameterized supertype, or null if the type isn't assignable to it
+	 */
+	private DeclaredType findSupertype(TypeMirror type, String qualifiedName) {
+		if (type.getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+		if (((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals(qualifiedName)) {
+			return (DeclaredType) type;
+		}
+		for (TypeMirror supertype : processingEnv.getTypeUtils().directSupertypes(type)) {
+			DeclaredType found = findSupertype(supertype, qualifiedName);
+			if (found != null) {
+				return found;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a Class valued annotation member without loading the class, which may not be
+	 * compiled yet.
+	 * @return the type in the annotation's value, or null if the annotation isn't present
+	 */
+	private TypeMirror getAnnotationType(Element element, String annotationName) {
+		for (AnnotationMirror a : element.getAnnotationMirrors()) {
+			if (((TypeElement) a.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+				for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : a.getElementValues().entrySet()) {
+					if (e.getKey().getSimpleName().contentEquals("value")) {
+						return (TypeMirror) e.getValue().getValue();
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private String getNestedName(TypeElement type) {
+		String name = type.getSimpleName().toString();
+		Element enclosing = type.getEnclosingElement();
+		while (!(enclosing instanceof PackageElement)) {
+			name = enclosing.getSimpleName() + "_" + name;
+			enclosing = enclosing.getEnclosingElement();
+		}
+		return name;
+	}
+
+	private String quote(String value) {
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	private void error(String message, Element element) {
+		processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+	}
+}
@@ -0,0 +1,217 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.colinalworth.celltable.columns.client.Columns.Aggregate;
+import com.google.gwt.cell.client.TextCell;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.i18n.client.NumberFormat;
+import com.google.gwt.user.cellview.client.AbstractCellTable;
+import com.google.gwt.user.cellview.client.Header;
+
+/**
+ * A footer showing the {@link Aggregate} of a column's values. The count, sum, minimum and maximum
+ * are kept as primitives, and updated as each value is replaced, so an edit doesn't read every
+ * row again. Only {@link #setRows(List)} reads every row, and replacing the current minimum or
+ * maximum, which is then found again the next time it is needed.
+ *
+ * Null values are skipped, and are not counted. Values are read from the model before any
+ * {@link Columns.ConvertedWith} conversion.
+ *
+ * Generated {@link Columns} types create one for each {@link Aggregate} column, add it as the
+ * column's footer, and update it when the column's own FieldUpdater changes a value, so this
+ * isn't usually used directly. Rows added to or removed from the list aren't tracked - call
+ * {@link Columns#setAggregateRows(List)} after changing the list.
+ *
+ * @author colin
+ *
+ * @param <T> the type of each row
+ */
+public abstract class ColumnAggregate<T> extends Header<String> {
+	private final Aggregate.Function function;
+	private final List<AbstractCellTable<?>> tables = new ArrayList<AbstractCellTable<?>>();
+	private boolean redrawScheduled;
+
+	private List<T> rows = Collections.emptyList();
+	private int count;
+	private double sum;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	// set when the min or max was removed, so must be found again from the rows
+	private boolean extremesStale;
+
+	/**
+	 * @param function the aggregate to show
+	 */
+	protected ColumnAggregate(Aggregate.Function function) {
+		super(new TextCell());
+		this.function = function;
+	}
+
+	/**
+	 * Reads the value of the column from the row, or NaN if it is null.
+	 * @param row
+	 * @return
+	 */
+	public abstract double readValue(T row);
+
+	/**
+	 * Reads every row, replacing the aggregate. The list is kept, and read again if the minimum or
+	 * maximum is replaced, so it should be the list shown in the table, and this should be called
+	 * again whenever rows are added to or removed from it.
+	 * @param rows
+	 */
+	public void setRows(List<T> rows) {
+		this.rows = rows;
+		count = 0;
+		sum = 0;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+		extremesStale = false;
+		for (T row : rows) {
+			addValue(readValue(row));
+		}
+		changed();
+	}
+
+	/**
+	 * Updates the aggregate after a row's value was changed.
+	 * @param oldValue the value read with {@link #readValue(Object)} before the change
+	 * @param newValue the value read after the change
+	 */
+	public void replace(double oldValue, double newValue) {
+		if (oldValue == newValue) {
+			return;
+		}
+		removeValue(oldValue);
+		addValue(newValue);
+		changed();
+	}
+
+	/**
+	 * @return the aggregate of the values, or NaN if there are no values to find the minimum,
+	 * maximum or average of
+	 */
+	public double getResult() {
+		switch (function) {
+		case COUNT:
+			return count;
+		case SUM:
+			return sum;
+		case AVG:
+			return count == 0 ? Double.NaN : sum / count;
+		case MIN:
+			findExtremes();
+			return count == 0 ? Double.NaN : min;
+		case MAX:
+			findExtremes();
+			return count == 0 ? Double.NaN : max;
+		}
+		throw new IllegalStateException("Unknown aggregate " + function);
+	}
+
+	@Override
+	public String getValue() {
+		double result = getResult();
+		return Double.isNaN(result) ? "" : format(result);
+	}
+
+	/**
+	 * Formats the aggregate to be shown in the footer.
+	 * @param value
+	 * @return
+	 */
+	protected String format(double value) {
+		return NumberFormat.getDecimalFormat().format(value);
+	}
+
+	/**
+	 * Redraws the footers of the given table when the aggregate changes.
+	 * @param table a table this is a footer of
+	 */
+	public void addTable(AbstractCellTable<?> table) {
+		if (!tables.contains(table)) {
+			tables.add(table);
+		}
+	}
+
+	private void addValue(double value) {
+		if (Double.isNaN(value)) {
+			return;
+		}
+		count++;
+		sum += value;
+		if (!extremesStale) {
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+	}
+
+	private void removeValue(double value) {
+		if (Double.isNaN(value)) {
+			return;
+		}
+		count--;
+		sum -= value;
+		if (count == 0) {
+			// start again, rather than keeping any rounding error
+			sum = 0;
+			min = Double.POSITIVE_INFINITY;
+			max = Double.NEGATIVE_INFINITY;
+			extremesStale = false;
+		} else if (value <= min || value >= max) {
+			extremesStale = true;
+		}
+	}
+
+	private void findExtremes() {
+		if (!extremesStale) {
+			return;
+		}
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+		for (T row : rows) {
+			double value = readValue(row);
+			if (!Double.isNaN(value)) {
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			}
+		}
+		extremesStale = false;
+	}
+
+	private void changed() {
+		if (tables.isEmpty() || redrawScheduled) {
+			return;
+		}
+		// many values may change at once while an editor flushes
+		redrawScheduled = true;
+		Scheduler.get().scheduleFinally(new ScheduledCommand() {
+			public void execute() {
+				redrawScheduled = false;
+				for (AbstractCellTable<?> table : tables) {
+					table.redrawFooters();
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,198 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.gwt.view.client.ListDataProvider;
+
+/**
+ * Filters rows by the text of their {@link Columns.Filterable} columns, and sets the rows which
+ * match in a {@link ListDataProvider}. The text of each row is read and normalized once, when the
+ * rows are set, so changing the query only searches strings already built.
+ *
+ * A query is split into terms at whitespace, and a row matches if each term appears in the text of
+ * any filterable column, ignoring case. As a query is typed, each new query starts with the last
+ * one, so only the rows which matched the last query are searched again.
+ *
+ * Generated {@link Columns} types implement {@link Columns#createFilter(ListDataProvider)} with a
+ * subclass that reads each column through the same getters and converters as the columns, so this
+ * isn't usually used directly.
+ *
+ * @author colin
+ *
+ * @param <T> the type of each row
+ */
+public abstract class ColumnFilter<T> {
+	// can't be typed in a filter box, so terms can't match across columns
+	private static final char SEPARATOR = '\n';
+
+	private final ListDataProvider<T> provider;
+	private final StringBuilder buffer = new StringBuilder();
+	private List<T> rows = Collections.emptyList();
+	private String[] keys = new String[0];
+	// indexes of the rows matching the current query, in order
+	private int[] matches = new int[0];
+	private int matchCount;
+	private String query = "";
+	private String[] terms = new String[0];
+
+	/**
+	 * @param provider the provider to set the matching rows in
+	 */
+	protected ColumnFilter(ListDataProvider<T> provider) {
+		this.provider = provider;
+	}
+
+	/**
+	 * Sets the rows to filter, and shows those matching the current query. The text of each row is
+	 * read now, so if a row changes later, call {@link #refreshRow(int)}.
+	 * @param rows the rows to filter, which are copied, so may be the provider's own list
+	 */
+	public void setRows(List<T> rows) {
+		// the provider's list is refilled with each query, so must not be kept
+		this.rows = new ArrayList<T>(rows);
+		keys = new String[rows.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = buildKey(rows.get(i));
+		}
+		matches = new int[keys.length];
+		search(false);
+		push();
+	}
+
+	/**
+	 * Replaces a row, and shows it if it matches.
+	 * @param index the index of the row in the list given to {@link #setRows(List)}
+	 * @param row
+	 */
+	public void setRow(int index, T row) {
+		rows.set(index, row);
+		refreshRow(index);
+	}
+
+	/**
+	 * Reads the text of a row again after it has changed, and shows it if it now matches.
+	 * @param index the index of the row in the list given to {@link #setRows(List)}
+	 */
+	public void refreshRow(int index) {
+		keys[index] = buildKey(rows.get(index));
+		search(false);
+		push();
+	}
+
+	/**
+	 * Shows only the rows matching the given query. Does nothing if the query is the same as the
+	 * last one, once normalized.
+	 * @param query the text to search for, or an empty string to show every row
+	 */
+	public void setQuery(String query) {
+		String normalized = normalize(query);
+		if (normalized.equals(this.query)) {
+			return;
+		}
+		// each term of the new query contains a term of the old, so only old matches can match
+		boolean refine = normalized.startsWith(this.query);
+		this.query = normalized;
+		terms = normalized.length() == 0 ? new String[0] : normalized.split(" ");
+		search(refine);
+		push();
+	}
+
+	/**
+	 * @return the normalized query rows are being filtered by
+	 */
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * @return the number of rows matching the query
+	 */
+	public int getMatchCount() {
+		return matchCount;
+	}
+
+	private String buildKey(T row) {
+		buffer.setLength(0);
+		writeKey(row, buffer);
+		return buffer.toString();
+	}
+
+	private void search(boolean refine) {
+		int count = refine ? matchCount : keys.length;
+		int found = 0;
+		for (int i = 0; i < count; i++) {
+			// never ahead of i, so matches can be overwritten as they are read
+			int index = refine ? matches[i] : i;
+			if (matches(keys[index])) {
+				matches[found++] = index;
+			}
+		}
+		matchCount = found;
+	}
+
+	private boolean matches(String key) {
+		for (String term : terms) {
+			if (key.indexOf(term) == -1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void push() {
+		List<T> visible = new ArrayList<T>(matchCount);
+		for (int i = 0; i < matchCount; i++) {
+			visible.add(rows.get(matches[i]));
+		}
+		// keep the same list, as sort handlers may have been given it
+		List<T> list = provider.getList();
+		list.clear();
+		list.addAll(visible);
+	}
+
+	/**
+	 * Appends the text of each filterable column of the row with
+	 * {@link #appendKey(StringBuilder, Object)}.
+	 * @param row
+	 * @param buffer
+	 */
+	protected abstract void writeKey(T row, StringBuilder buffer);
+
+	/**
+	 * Appends the normalized text of a single value. Null values are skipped.
+	 * @param buffer
+	 * @param value
+	 */
+	protected static void appendKey(StringBuilder buffer, Object value) {
+		if (value != null) {
+			buffer.append(normalize(String.valueOf(value))).append(SEPARATOR);
+		}
+	}
+
+	/**
+	 * Lower-cases the text, and trims and collapses whitespace to single spaces.
+	 * @param text
+	 * @return
+	 */
+	protected static String normalize(String text) {
+		return text.trim().toLowerCase().replaceAll("\\s+", " ");
+	}
+}
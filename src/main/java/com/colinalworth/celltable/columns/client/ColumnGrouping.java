@@ -0,0 +1,396 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gwt.dom.builder.shared.TableCellBuilder;
+import com.google.gwt.dom.builder.shared.TableRowBuilder;
+import com.google.gwt.dom.client.BrowserEvents;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.EventTarget;
+import com.google.gwt.dom.client.TableRowElement;
+import com.google.gwt.event.shared.HandlerRegistration;
+import com.google.gwt.safehtml.shared.SafeHtmlBuilder;
+import com.google.gwt.user.cellview.client.AbstractCellTable;
+import com.google.gwt.user.cellview.client.DefaultCellTableBuilder;
+import com.google.gwt.view.client.CellPreviewEvent;
+import com.google.gwt.view.client.ListDataProvider;
+
+/**
+ * Groups rows by the value of their {@link Columns.GroupBy} column, and sets the rows of each
+ * group, one group after another, in a {@link ListDataProvider}. Each row's group is kept, so
+ * adding, removing or changing a row only updates the group it leaves and the group it joins,
+ * instead of grouping every row again. The provider's list is changed in place, so only the
+ * rows of those groups, and any rows they move, are drawn again. Groups are kept in the order they
+ * were first seen, and rows within each group in the order they were added.
+ *
+ * A table given to {@link #attach(AbstractCellTable)} draws a header row before the first row of
+ * each group, with the group's key and size, which expands or collapses the group when clicked.
+ * The first row of a collapsed group is still set in the provider, so its header can be drawn.
+ *
+ * Generated {@link Columns} types implement {@link Columns#createGrouping(ListDataProvider)} with
+ * a subclass that reads the key as the column does, before any {@link Columns.ConvertedWith}
+ * conversion, and regroup a row when that property is changed through the columns' own
+ * FieldUpdaters, directly or when a {@link HasDataFlushableEditor} flushes. Rows must otherwise be
+ * given to this rather than to the table, so the editor should not also be given the list, and
+ * the provider's list should not be sorted, or the groups would be split up.
+ *
+ * @author colin
+ *
+ * @param <T> the type of each row
+ */
+public abstract class ColumnGrouping<T> {
+	/**
+	 * The class name of each group header row.
+	 */
+	public static final String GROUP_HEADER_CLASS = "columns-group-header";
+
+	/**
+	 * The rows which share a key.
+	 *
+	 * @param <T> the type of each row
+	 */
+	public static class Group<T> {
+		private final Object key;
+		private final List<T> rows = new ArrayList<T>();
+		private boolean expanded;
+
+		Group(Object key, boolean expanded) {
+			this.key = key;
+			this.expanded = expanded;
+		}
+
+		public Object getKey() {
+			return key;
+		}
+
+		/**
+		 * @return the rows in this group, which must not be modified
+		 */
+		public List<T> getRows() {
+			return Collections.unmodifiableList(rows);
+		}
+
+		public int getSize() {
+			return rows.size();
+		}
+
+		public boolean isExpanded() {
+			return expanded;
+		}
+	}
+
+	private final ListDataProvider<T> provider;
+	private final Map<Object, Group<T>> groups = new LinkedHashMap<Object, Group<T>>();
+	private final Map<T, Group<T>> membership = new IdentityHashMap<T, Group<T>>();
+	// kept apart from the groups, so they stay collapsed if emptied or the rows are replaced
+	private final Set<Object> collapsed = new HashSet<Object>();
+	private final List<AbstractCellTable<T>> tables = new ArrayList<AbstractCellTable<T>>();
+	private final List<HandlerRegistration> registrations = new ArrayList<HandlerRegistration>();
+
+	/**
+	 * @param provider the provider to set the grouped rows in
+	 */
+	protected ColumnGrouping(ListDataProvider<T> provider) {
+		this.provider = provider;
+	}
+
+	/**
+	 * Reads the key of the group the row belongs in.
+	 * @param row
+	 * @return
+	 */
+	protected abstract Object getGroupKey(T row);
+
+	/**
+	 * Groups every row, replacing any rows given before, and sets them all in the provider.
+	 * @param rows
+	 */
+	public void setRows(List<T> rows) {
+		groups.clear();
+		membership.clear();
+		for (T row : rows) {
+			Object key = getGroupKey(row);
+			Group<T> group = groups.get(key);
+			if (group == null) {
+				group = new Group<T>(key, !collapsed.contains(key));
+				groups.put(key, group);
+			}
+			group.rows.add(row);
+			membership.put(row, group);
+		}
+
+		List<T> visible = new ArrayList<T>(membership.size());
+		for (Group<T> group : groups.values()) {
+			if (group.expanded) {
+				visible.addAll(group.rows);
+			} else {
+				visible.add(group.rows.get(0));
+			}
+		}
+		// keep the same list, in case others have been given it
+		List<T> list = provider.getList();
+		list.clear();
+		list.addAll(visible);
+	}
+
+	/**
+	 * Adds a row to the end of its group.
+	 * @param row
+	 */
+	public void add(T row) {
+		addToGroup(row, getGroupKey(row));
+	}
+
+	/**
+	 * Removes a row from its group.
+	 * @param row
+	 */
+	public void remove(T row) {
+		Group<T> group = membership.remove(row);
+		if (group != null) {
+			removeFromGroup(row, group);
+		}
+	}
+
+	/**
+	 * Reads the key of a row again after it has changed, and if it is different, moves the row to
+	 * the end of its new group. Rows which haven't been added are ignored.
+	 * @param row
+	 */
+	public void update(T row) {
+		Group<T> group = membership.get(row);
+		if (group == null) {
+			return;
+		}
+		Object key = getGroupKey(row);
+		if (key == null ? group.key == null : key.equals(group.key)) {
+			return;
+		}
+		removeFromGroup(row, group);
+		addToGroup(row, key);
+	}
+
+	/**
+	 * @return each group, in order
+	 */
+	public List<Group<T>> getGroups() {
+		return new ArrayList<Group<T>>(groups.values());
+	}
+
+	/**
+	 * @param row
+	 * @return the group the row is in, or null if it hasn't been added
+	 */
+	public Group<T> getGroup(T row) {
+		return membership.get(row);
+	}
+
+	/**
+	 * Shows or hides the rows of a group, leaving only its header when hidden.
+	 * @param key
+	 * @param expanded
+	 */
+	public void setExpanded(Object key, boolean expanded) {
+		if (expanded) {
+			collapsed.remove(key);
+		} else {
+			collapsed.add(key);
+		}
+		Group<T> group = groups.get(key);
+		if (group == null || group.expanded == expanded) {
+			return;
+		}
+		group.expanded = expanded;
+		int start = getStart(group);
+		List<T> list = provider.getList();
+		if (group.rows.size() > 1) {
+			if (expanded) {
+				list.addAll(start + 1, group.rows.subList(1, group.rows.size()));
+			} else {
+				list.subList(start + 1, start + group.rows.size()).clear();
+				if (start + 1 < list.size()) {
+					// a cleared sub list only marks its own range, not the rows that moved up
+					list.set(list.size() - 1, list.get(list.size() - 1));
+				}
+			}
+		}
+		// redraw the header
+		list.set(start, group.rows.get(0));
+	}
+
+	/**
+	 * Sets the changed rows in the provider's displays now, instead of at the end of the current
+	 * event loop.
+	 */
+	public void flush() {
+		provider.flush();
+	}
+
+	/**
+	 * Draws a header row before each group in the given table, and toggles the group when it is
+	 * clicked. This replaces the table's CellTableBuilder.
+	 * @param table a table showing the provider's rows
+	 */
+	public void attach(final AbstractCellTable<T> table) {
+		table.setTableBuilder(new GroupTableBuilder(table));
+		tables.add(table);
+		registrations.add(table.addCellPreviewHandler(new CellPreviewEvent.Handler<T>() {
+			public void onCellPreview(CellPreviewEvent<T> event) {
+				if (!BrowserEvents.CLICK.equals(event.getNativeEvent().getType())) {
+					return;
+				}
+				EventTarget target = event.getNativeEvent().getEventTarget();
+				if (!Element.is(target)) {
+					return;
+				}
+				Element element = Element.as(target);
+				while (element != null && !TableRowElement.TAG.equalsIgnoreCase(element.getTagName())) {
+					element = element.getParentElement();
+				}
+				Group<T> group = membership.get(event.getValue());
+				if (element != null && GROUP_HEADER_CLASS.equals(element.getClassName()) && group != null) {
+					setExpanded(group.key, !group.expanded);
+				}
+			}
+		}));
+	}
+
+	/**
+	 * Forgets every row, and restores the default CellTableBuilder of each attached table. Generated
+	 * Columns stop regrouping rows in a disposed grouping, so dispose of one once it is no longer
+	 * shown.
+	 */
+	public void dispose() {
+		groups.clear();
+		membership.clear();
+		for (HandlerRegistration registration : registrations) {
+			registration.removeHandler();
+		}
+		registrations.clear();
+		for (AbstractCellTable<T> table : tables) {
+			table.setTableBuilder(new DefaultCellTableBuilder<T>(table));
+		}
+		tables.clear();
+	}
+
+	/**
+	 * Writes the content of a group's header row.
+	 * @param group
+	 * @param sb
+	 */
+	protected void renderHeader(Group<T> group, SafeHtmlBuilder sb) {
+		sb.appendEscaped(group.expanded ? "\u25BE " : "\u25B8 ");
+		sb.appendEscaped(String.valueOf(group.key));
+		sb.appendEscaped(" (" + group.getSize() + ")");
+	}
+
+	/**
+	 * @return the index in the provider's list of the group's first row
+	 */
+	private int getStart(Group<T> group) {
+		int start = 0;
+		for (Group<T> g : groups.values()) {
+			if (g == group) {
+				break;
+			}
+			start += g.expanded ? g.rows.size() : 1;
+		}
+		return start;
+	}
+
+	private void addToGroup(T row, Object key) {
+		Group<T> group = groups.get(key);
+		List<T> list = provider.getList();
+		if (group == null) {
+			// new groups go last
+			group = new Group<T>(key, !collapsed.contains(key));
+			groups.put(key, group);
+			group.rows.add(row);
+			membership.put(row, group);
+			list.add(row);
+			return;
+		}
+		membership.put(row, group);
+		int start = getStart(group);
+		group.rows.add(row);
+		if (group.expanded) {
+			list.add(start + group.rows.size() - 1, row);
+		}
+		// redraw the header, with the new size
+		list.set(start, group.rows.get(0));
+	}
+
+	private void removeFromGroup(T row, Group<T> group) {
+		int start = getStart(group);
+		// by identity, as rows may be equal to others in the group
+		int position = 0;
+		while (group.rows.get(position) != row) {
+			position++;
+		}
+		group.rows.remove(position);
+		List<T> list = provider.getList();
+		if (group.rows.isEmpty()) {
+			groups.remove(group.key);
+			list.remove(start);
+			return;
+		}
+		if (group.expanded) {
+			list.remove(start + position);
+		}
+		// redraw the header, with the new size, and perhaps a new first row
+		list.set(start, group.rows.get(0));
+	}
+
+	/**
+	 * Builds rows as usual, adding a header row before the first row of each group, and leaving
+	 * only the header for a collapsed group.
+	 */
+	private class GroupTableBuilder extends DefaultCellTableBuilder<T> {
+		public GroupTableBuilder(AbstractCellTable<T> table) {
+			super(table);
+		}
+
+		@Override
+		public void buildRowImpl(T rowValue, int absRowIndex) {
+			Group<T> group = membership.get(rowValue);
+			if (group != null && group.rows.get(0) == rowValue) {
+				TableRowBuilder tr = startRow();
+				tr.className(GROUP_HEADER_CLASS);
+				TableCellBuilder td = tr.startTD();
+				td.colSpan(cellTable.getColumnCount());
+				SafeHtmlBuilder sb = new SafeHtmlBuilder();
+				renderHeader(group, sb);
+				td.html(sb.toSafeHtml());
+				td.endTD();
+				tr.endTR();
+				if (!group.expanded) {
+					return;
+				}
+			}
+			super.buildRowImpl(rowValue, absRowIndex);
+		}
+	}
+}
@@ -21,17 +21,26 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.List;
 
 import com.google.gwt.cell.client.FieldUpdater;
 import com.google.gwt.i18n.client.Constants;
+import com.google.gwt.user.cellview.client.AbstractCellTable;
 import com.google.gwt.user.cellview.client.CellTable;
 import com.google.gwt.user.cellview.client.Column;
+import com.google.gwt.user.cellview.client.ColumnSortEvent.ListHandler;
+import com.google.gwt.view.client.ListDataProvider;
+import com.google.gwt.view.client.ProvidesKey;
 
 /**
  * Simplifies creation of {@link com.google.gwt.user.cellview.client.Column} objects for a 
  * {@link CellTable}. Interfaces extending this may be declared and requested using GWT.create, and
  * used to add columns to the CellTable.
  * 
+ * Any {@link AbstractCellTable} may be configured, so the same columns can also be used with a
+ * {@link com.google.gwt.user.cellview.client.DataGrid}, which only draws the visible rows and so
+ * is better suited to very large tables.
+ * 
  * Declared methods should return a type which implements {@link com.google.gwt.cell.client.Cell},
  * and may be named for the properties available in the data to be drawn by the CellTable instance.
  * As with the {@link com.google.gwt.editor.client.Editor} framework and its implementors, these 
@@ -61,10 +70,10 @@ public interface Columns<T> {
 	 * 
 	 * @param cellTable
 	 */
-	void configure(CellTable<T> cellTable);
+	void configure(AbstractCellTable<T> cellTable);
 
 	/**
-	 * As configure(CellTable<T>), except will also bind the columns to the editor, so that when the
+	 * As configure(AbstractCellTable<T>), except will also bind the columns to the editor, so that when the
 	 * editor system flushes, the data will be applied to the model.
 	 * 
 	 * Because data will not be applied to the model until the flush occurs, some data can be
@@ -74,10 +83,25 @@ public interface Columns<T> {
 	 * TODO Consider adding a configuration option to allow immediate flushing (other than not
 	 * passing an editor)
 	 * 
+	 * Footers of {@link Aggregate} columns follow edits made through the columns, but not changes
+	 * to the rows themselves - after calling the editor's setValue, or adding or removing rows in
+	 * its list, call {@link #setAggregateRows(List)} with the editor's list.
+	 * 
 	 * @param cellTable
 	 * @param editor
 	 */
-	void configure(CellTable<T> cellTable, HasDataFlushableEditor<T> editor);
+	void configure(AbstractCellTable<T> cellTable, HasDataFlushableEditor<T> editor);
+
+	/**
+	 * As configure(AbstractCellTable<T>, HasDataFlushableEditor<T>), except that each column marked as
+	 * {@link Sortable} will have a generated Comparator set in the given ListHandler, and the
+	 * handler will be added to the table.
+	 * 
+	 * @param cellTable
+	 * @param editor the editor to bind to, or null
+	 * @param sortHandler the handler to sort the table's list with, or null
+	 */
+	void configure(AbstractCellTable<T> cellTable, HasDataFlushableEditor<T> editor, ListHandler<T> sortHandler);
 
 
 	/**
@@ -88,6 +112,65 @@ public interface Columns<T> {
 	 */
 	String[] getPaths();
 
+	/**
+	 * Writes the given rows as CSV to the output, with a header line first, using the same
+	 * headers as configure(). Each value is read as the Column would read it, through the same
+	 * path and {@link ConvertedWith} converter, and written with String.valueOf.
+	 * 
+	 * Rows are written in chunks from an incremental command, so this returns immediately, and the
+	 * browser stays responsive while large lists are exported. See {@link CsvExport}.
+	 * 
+	 * @param rows the rows to write, which must not be changed until the export is complete
+	 * @param out the output to append each chunk to
+	 * @param callback told of progress and completion, may be null
+	 */
+	void export(List<T> rows, Appendable out, CsvExport.Callback callback);
+
+	/**
+	 * Returns a key provider that reads the property marked with {@link Key}, or null if there is
+	 * none. The table, its selection model and its data provider only accept a key provider when
+	 * they are created, so pass it to their constructors, for example:
+	 * <pre>
+	 * CellTable&lt;Person&gt; table = new CellTable&lt;Person&gt;(50, columns.getKeyProvider());
+	 * table.setSelectionModel(new MultiSelectionModel&lt;Person&gt;(columns.getKeyProvider()));
+	 * </pre>
+	 * configure() checks that a table it is given uses a key provider when one is available.
+	 * @return
+	 */
+	ProvidesKey<T> getKeyProvider();
+
+	/**
+	 * Creates a filter which searches the text of each column marked {@link Filterable}, as read
+	 * through the same path and {@link ConvertedWith} converter as the Column, and sets the rows
+	 * that match in the given provider. See {@link ColumnFilter}.
+	 * 
+	 * @param provider the provider to set the matching rows in
+	 * @return a new filter, with no rows until {@link ColumnFilter#setRows(List)} is called
+	 */
+	ColumnFilter<T> createFilter(ListDataProvider<T> provider);
+
+	/**
+	 * Reads every row to find the footer of each column marked {@link Aggregate}. Call this when
+	 * the list shown in the table is replaced, or rows are added to or removed from it - edits
+	 * made through the columns' own FieldUpdaters, directly or when a
+	 * {@link HasDataFlushableEditor} flushes, update the footers without reading the other rows.
+	 * See {@link ColumnAggregate}.
+	 * 
+	 * @param rows the rows shown in the table
+	 */
+	void setAggregateRows(List<T> rows);
+
+	/**
+	 * Creates a grouping of rows by the column marked {@link GroupBy}, which sets the grouped rows
+	 * in the given provider. Rows whose key is changed through the columns' own FieldUpdaters are
+	 * moved to their new group. See {@link ColumnGrouping}.
+	 * 
+	 * @param provider the provider to set the grouped rows in
+	 * @return a new grouping, with no rows until {@link ColumnGrouping#setRows(List)} is called,
+	 * or null if no column is marked {@link GroupBy}
+	 */
+	ColumnGrouping<T> createGrouping(ListDataProvider<T> provider);
+
 
 
 	/**
@@ -162,17 +245,152 @@ public interface Columns<T> {
 	/**
 	 * Allows a type implementing {@link DataConverter} to be provided which will accept data from
 	 * the get method this Column is mapped to and transform it before passing it the Cell instance
-	 * and back again. The given type will be created using GWT.create as needed and not cached.
+	 * and back again. The given type will be created using GWT.create, and by default a single
+	 * instance will be retained for each Columns instance - see {@link Scope} for other options.
 	 */
 	@Documented
 	@Retention(RetentionPolicy.RUNTIME)
 	@Target(ElementType.METHOD)
 	public @interface ConvertedWith {
+		/**
+		 * Lifecycle of the DataConverter instance used by a column.
+		 */
+		public enum Scope {
+			/**
+			 * One instance, shared by all instances of the generated Columns type.
+			 */
+			SINGLETON,
+			/**
+			 * One instance for each Columns instance. This is the default.
+			 */
+			INSTANCE,
+			/**
+			 * A new instance is created each time data is read or written. Only useful if the
+			 * converter retains state that must not be shared.
+			 */
+			CALL
+		}
 		Class<? extends DataConverter<?,?>> value();
+		Scope scope() default Scope.INSTANCE;
+	}
+
+	/**
+	 * Sets the {@link com.google.gwt.i18n.client.NumberFormat} pattern to use for the column's
+	 * {@link ConvertedWith} converter, which must implement
+	 * {@link com.colinalworth.celltable.columns.client.converters.HasNumberFormat}. The format is
+	 * created once, when the converter is, so the converter cannot be scoped to each call.
+	 */
+	@Documented
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.METHOD)
+	public @interface Format {
+		String value();
+	}
+
+	/**
+	 * Requests that configure() install a generated
+	 * {@link com.google.gwt.user.cellview.client.CellTableBuilder} on the table. Before each row is
+	 * built, the properties shared by more than one column's path are read from the row once, so
+	 * those Columns don't each follow the shared part of their paths again. Columns with a path of
+	 * their own still read their value as usual. Only these reads are optimized: cells are still
+	 * rendered as {@link com.google.gwt.user.cellview.client.DefaultCellTableBuilder} would render
+	 * them, so this may be combined with other columns added to the same table. If no columns
+	 * share a property, a warning is logged and no table builder is generated.
+	 * 
+	 * Supported by GWT 2.5 and later.
+	 */
+	@Documented
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.TYPE)
+	public @interface GeneratedTableBuilder {
+	}
+
+	/**
+	 * Shares stateless cells and columns between every instance of the generated type, so that
+	 * many tables showing the same columns don't each build their own. The first instance to
+	 * create a cell keeps it in a static field, and later instances reuse it.
+	 * 
+	 * Cells which keep state for each table stay with each instance: editable cells (subclasses of
+	 * {@link com.google.gwt.cell.client.AbstractEditableCell}), which keep view data for rows, and
+	 * cells created by a {@link ColumnsWithFactory} factory. Columns stay with each instance if
+	 * their cell does, if they are {@link Editable}, or if {@link GeneratedTableBuilder} or the
+	 * compact generation mode is used. The {@link ConvertedWith} converter of a shared column is
+	 * shared too, as if it were scoped as a singleton.
+	 */
+	@Documented
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.TYPE)
+	public @interface Shared {
+	}
+
+	/**
+	 * Marks the property that identifies each row, so that {@link Columns#getKeyProvider()}
+	 * returns a generated {@link ProvidesKey} which reads it directly, letting selection and row
+	 * lookups hash the key instead of comparing rows. On a column, the column's path is read
+	 * (before any {@link ConvertedWith} conversion), and the value is ignored. On the interface,
+	 * the value is the path to read, and must be given. Only one key may be declared.
+	 */
+	@Documented
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target({ElementType.METHOD, ElementType.TYPE})
+	public @interface Key {
+		String value() default "";
+	}
+
+	/**
+	 * Requests that a plain Java accessor class be generated for this type when it is compiled
+	 * with javac, so the same columns can be read outside of the browser. See
+	 * {@link com.colinalworth.celltable.columns.server.ColumnAccessors} for the generated API,
+	 * and {@link com.colinalworth.celltable.columns.apt.ColumnsProcessor} for how to enable it.
+	 * Ignored when the type is created with GWT.create.
+	 */
+	@Documented
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.TYPE)
+	public @interface ServerAccessors {
+	}
+
+	/**
+	 * Shows an aggregate of the Column's values as its footer, when added to a table with
+	 * configure(). The model's value is read, before any {@link ConvertedWith} conversion, and
+	 * must be a primitive or a Number, except to COUNT, which counts non-null values of any type.
+	 * 
+	 * Edits made with a custom {@link Editable} FieldUpdater are not tracked, so call
+	 * {@link Columns#setAggregateRows(List)} again after them.
+	 */
+	@Documented
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.METHOD)
+	public @interface Aggregate {
+		public enum Function { SUM, AVG, MIN, MAX, COUNT }
+		Function value();
+	}
+
+	/**
+	 * Groups rows by the Column's value, read from the model before any {@link ConvertedWith}
+	 * conversion, in the {@link ColumnGrouping} created by
+	 * {@link Columns#createGrouping(ListDataProvider)}. Only one column may be marked.
+	 */
+	@Documented
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.METHOD)
+	public @interface GroupBy {
+	}
+
+	/**
+	 * Indicates that the text of the Column should be searched by the {@link ColumnFilter} created
+	 * by {@link Columns#createFilter(ListDataProvider)}.
+	 */
+	@Documented
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.METHOD)
+	public @interface Filterable {
 	}
 
 	/**
-	 * Indicates that the Column should be set as sortable for the client.
+	 * Indicates that the Column should be set as sortable for the client. If the data read from
+	 * the model (before any {@link ConvertedWith} conversion) is a primitive or is Comparable, a
+	 * Comparator will be generated for use with a {@link ListHandler}.
 	 * 
 	 * Supported by GWT 2.2 and later.
 	 */
@@ -0,0 +1,141 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gwt.core.client.Duration;
+
+/**
+ * Collects timings from generated {@link Columns} types. Only used when the module sets the
+ * <code>celltable.columns.instrument</code> property to true:
+ * <pre>
+ * &lt;set-property name="celltable.columns.instrument" value="true" /&gt;
+ * </pre>
+ * When the property is false (the default), no calls to this class are generated at all.
+ *
+ * Each generated column reports under the name of its declaring interface and method, e.g.
+ * <code>com.example.PersonColumns.name</code>. Nothing is recorded until a {@link Sink} is set -
+ * {@link Totals} can be used to keep counts and cumulative time for each column.
+ *
+ * @author colin
+ *
+ */
+public final class ColumnsMetrics {
+	/**
+	 * The kinds of work that are timed in generated columns.
+	 */
+	public enum Operation {
+		/**
+		 * Reading the value for a cell from a row, including any conversion.
+		 */
+		GET_VALUE,
+		/**
+		 * Passing the value read from a row through the column's DataConverter.
+		 */
+		CONVERT,
+		/**
+		 * Applying a changed value from the cell to a row, through a FieldUpdater.
+		 */
+		UPDATE
+	}
+
+	/**
+	 * Receives each timed call made in an instrumented Columns type.
+	 */
+	public interface Sink {
+		void record(String column, Operation operation, double elapsedMillis);
+	}
+
+	/**
+	 * Sink that keeps the invocation count and cumulative time for each column and operation.
+	 */
+	public static class Totals implements Sink {
+		private final Map<String, int[]> counts = new HashMap<String, int[]>();
+		private final Map<String, double[]> millis = new HashMap<String, double[]>();
+
+		public void record(String column, Operation operation, double elapsedMillis) {
+			String key = key(column, operation);
+			int[] count = counts.get(key);
+			if (count == null) {
+				count = new int[1];
+				counts.put(key, count);
+				millis.put(key, new double[1]);
+			}
+			count[0]++;
+			millis.get(key)[0] += elapsedMillis;
+		}
+
+		public int getCount(String column, Operation operation) {
+			int[] count = counts.get(key(column, operation));
+			return count == null ? 0 : count[0];
+		}
+
+		public double getTotalMillis(String column, Operation operation) {
+			double[] total = millis.get(key(column, operation));
+			return total == null ? 0 : total[0];
+		}
+
+		public void clear() {
+			counts.clear();
+			millis.clear();
+		}
+
+		private String key(String column, Operation operation) {
+			return column + "/" + operation.name();
+		}
+	}
+
+	private static Sink sink;
+
+	private ColumnsMetrics() {
+	}
+
+	/**
+	 * Sets where generated columns report to, or null to stop recording.
+	 * @param sink
+	 */
+	public static void setSink(Sink sink) {
+		ColumnsMetrics.sink = sink;
+	}
+
+	public static Sink getSink() {
+		return sink;
+	}
+
+	/**
+	 * Called by generated code to start timing a call.
+	 * @return the current time, to pass back to {@link #record(String, Operation, double)}
+	 */
+	public static double start() {
+		return sink == null ? 0 : Duration.currentTimeMillis();
+	}
+
+	/**
+	 * Called by generated code once a timed call has finished. Calls that started before a sink
+	 * was set are not recorded, as they have no start time.
+	 * @param column
+	 * @param operation
+	 * @param start the value returned from {@link #start()}
+	 */
+	public static void record(String column, Operation operation, double start) {
+		if (sink != null && start != 0) {
+			sink.record(column, operation, Duration.currentTimeMillis() - start);
+		}
+	}
+}
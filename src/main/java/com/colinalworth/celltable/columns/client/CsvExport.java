@@ -0,0 +1,159 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.client;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.RepeatingCommand;
+
+/**
+ * Writes rows as CSV a chunk at a time, so that large lists can be exported without blocking the
+ * browser. Each chunk is built in a single buffer, reused for every chunk, and then appended to
+ * the output, so only one chunk of text is held at a time beyond what the output keeps.
+ *
+ * Generated {@link Columns} types implement {@link Columns#export(List, Appendable, Callback)} with
+ * a subclass that reads each row through the same getters and converters as the columns, so
+ * this isn't usually used directly.
+ *
+ * @author colin
+ *
+ * @param <T> the type of each row
+ */
+public abstract class CsvExport<T> implements RepeatingCommand {
+	/**
+	 * Told how an export is progressing. Each method is called from a scheduled command, after
+	 * {@link Columns#export(List, Appendable, Callback)} has returned.
+	 */
+	public interface Callback {
+		/**
+		 * Called after each chunk of rows has been appended, except the last.
+		 * @param exported the number of rows written so far
+		 * @param total the number of rows to write
+		 */
+		void onProgress(int exported, int total);
+		/**
+		 * Called once every row has been appended.
+		 */
+		void onComplete();
+		/**
+		 * Called if the output fails, no more rows will be written.
+		 * @param e
+		 */
+		void onFailure(IOException e);
+	}
+
+	/**
+	 * The number of rows written in each chunk. The scheduler runs as many chunks as fit in its
+	 * time slice before letting the browser continue.
+	 */
+	public static final int ROWS_PER_CHUNK = 200;
+
+	private final List<T> rows;
+	private final Appendable out;
+	private final Callback callback;
+	private final StringBuilder buffer = new StringBuilder();
+	private boolean headerWritten;
+	private int index;
+
+	/**
+	 * @param rows the rows to write, which must not be changed until the export is complete
+	 * @param out
+	 * @param callback may be null
+	 */
+	protected CsvExport(List<T> rows, Appendable out, Callback callback) {
+		this.rows = rows;
+		this.out = out;
+		this.callback = callback;
+	}
+
+	/**
+	 * Schedules the export to start once the current event loop finishes.
+	 */
+	public void start() {
+		Scheduler.get().scheduleIncremental(this);
+	}
+
+	public boolean execute() {
+		buffer.setLength(0);
+		if (!headerWritten) {
+			writeHeader(buffer);
+			buffer.append("\r\n");
+			headerWritten = true;
+		}
+		int end = Math.min(rows.size(), index + ROWS_PER_CHUNK);
+		for (; index < end; index++) {
+			writeRow(rows.get(index), buffer);
+			buffer.append("\r\n");
+		}
+		try {
+			// the output may keep what it is given, so it can't have the buffer itself
+			out.append(buffer.toString());
+		} catch (IOException e) {
+			if (callback != null) {
+				callback.onFailure(e);
+			}
+			return false;
+		}
+
+		if (callback != null) {
+			if (index < rows.size()) {
+				callback.onProgress(index, rows.size());
+			} else {
+				callback.onComplete();
+			}
+		}
+		return index < rows.size();
+	}
+
+	/**
+	 * Appends the header of each column, separated with {@link #appendValue(StringBuilder, Object, boolean)}.
+	 * @param buffer
+	 */
+	protected abstract void writeHeader(StringBuilder buffer);
+
+	/**
+	 * Appends the value of each column for the given row, separated with
+	 * {@link #appendValue(StringBuilder, Object, boolean)}.
+	 * @param row
+	 * @param buffer
+	 */
+	protected abstract void writeRow(T row, StringBuilder buffer);
+
+	/**
+	 * Appends a single value, quoted if it contains a separator, quote or line break. Null values
+	 * are written as empty.
+	 * @param buffer
+	 * @param value
+	 * @param first true if this is the first value in the line, so no separator is needed
+	 */
+	protected static void appendValue(StringBuilder buffer, Object value, boolean first) {
+		if (!first) {
+			buffer.append(',');
+		}
+		if (value == null) {
+			return;
+		}
+		String str = String.valueOf(value);
+		if (str.indexOf(',') == -1 && str.indexOf('"') == -1 && str.indexOf('\n') == -1 && str.indexOf('\r') == -1) {
+			buffer.append(str);
+			return;
+		}
+		buffer.append('"').append(str.replace("\"", "\"\"")).append('"');
+	}
+}
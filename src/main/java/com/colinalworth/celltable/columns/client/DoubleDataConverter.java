@@ -0,0 +1,37 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.client;
+
+/**
+ * {@link DataConverter} that can also read double values without boxing them. When a Column's path
+ * ends at a primitive numeric getter, the generated code will call fromDoubleToCell instead of
+ * fromModelToCell, unless the converter is also an {@link IntDataConverter} and the getter returns
+ * an integral type.
+ * 
+ * @author colin
+ *
+ * @param <C> the type of data that the {@link com.google.gwt.cell.client.Cell} expects
+ */
+public interface DoubleDataConverter<C> extends DataConverter<Double, C> {
+	/**
+	 * Converts a primitive value in the model into something that can be displayed.
+	 * 
+	 * @param model
+	 * @return
+	 */
+	C fromDoubleToCell(double model);
+}
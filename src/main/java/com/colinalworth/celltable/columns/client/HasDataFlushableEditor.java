@@ -17,10 +17,20 @@
 package com.colinalworth.celltable.columns.client;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.google.gwt.cell.client.FieldUpdater;
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.RepeatingCommand;
 import com.google.gwt.editor.client.EditorDelegate;
 import com.google.gwt.editor.client.ValueAwareEditor;
 import com.google.gwt.editor.client.adapters.EditorSource;
@@ -33,14 +43,47 @@ import com.google.gwt.view.client.HasData;
  * data flushed from here, back into the real data
  * 
  * Instead of creating FieldUpdater instances that directly modify the data, use a subclass of
- * PendingFieldUpdateChange, with commit() doing the actual changing.
+ * PendingFieldUpdateChange, with commit() doing the actual changing. Only the last change made to
+ * each cell (row object and PendingFieldUpdateChange instance) is kept, and pending changes are
+ * discarded once they have been flushed. Cells are identified by the row object rather than its
+ * index, so changes stay with their row if the list is set again or sorted before the flush.
+ * 
+ * Rows changed while setting a new list or flushing are drawn in one batch, instead of one row at
+ * a time. Rows which are only moved to a new index are not drawn again if the same row is already
+ * drawn there, such as those before a removed row. Setting a value always draws the row, so that
+ * setting the same list again shows changes made to its rows, unless a {@link VersionProvider} is
+ * set and the row's version is unchanged.
+ * 
+ * When many changes may be pending, such as after pasting into a whole column, use
+ * {@link #flushAsync(FlushCallback)} to commit them a slice at a time, so the browser doesn't
+ * stop responding while they are applied.
+ * 
+ * Each change made through a PendingFieldUpdateChange is also recorded as a {@link Delta}, so that
+ * after a flush, {@link #getFlushedDeltas()}, {@link #getDirtyRows()} and {@link #getDirtyPaths()}
+ * describe only what that flush changed, for example to send just those values to the server.
+ * 
+ * When a property of a row changes, call {@link #onPropertyChange(int, String...)} to redraw just
+ * that row, and only if one of the table's columns reads the property. Generated columns register
+ * the paths they read when they are configured with this editor.
  * 
  * @author colin
  *
  */
 public class HasDataFlushableEditor<T> extends ListEditor<T, ValueAwareEditor<T>> {
 	static class HasDataEditorSource<T> extends EditorSource<ValueAwareEditor<T>> {
+		private static final Object NOT_DRAWN = new Object();
+
 		private final HasData<T> data;
+		private VersionProvider<? super T> versions;
+		// the row and version last drawn at each index, so unchanged rows aren't drawn again
+		private final List<Object> drawnRows = new ArrayList<Object>();
+		private final List<Object> drawnVersions = new ArrayList<Object>();
+
+		private boolean batching;
+		private int pendingStart = Integer.MAX_VALUE;
+		private int pendingEnd = -1;
+		private boolean rowCountChanged;
+		private final Set<String> paths = new HashSet<String>();
 
 		public HasDataEditorSource(HasData<T> data) {
 			this.data = data;
@@ -48,7 +91,7 @@ public class HasDataFlushableEditor<T> extends ListEditor<T, ValueAwareEditor<T>
 
 		@Override
 		public IndexedEditor<T> create(int index) {
-			return new IndexedEditor<T>(index, data);
+			return new IndexedEditor<T>(index, this);
 		}
 
 		@Override
@@ -61,19 +104,109 @@ public class HasDataFlushableEditor<T> extends ListEditor<T, ValueAwareEditor<T>
 		 */
 		@Override
 		public void dispose(ValueAwareEditor<T> subEditor) {
-			data.setRowCount(data.getRowCount() - 1);
+			if (batching) {
+				rowCountChanged = true;
+			} else {
+				data.setRowCount(data.getRowCount() - 1);
+				truncateDrawn(data.getRowCount());
+			}
 			((IndexedEditor<T>)subEditor).remove();
 		}
+
+		/**
+		 * Draws the row, or if a batch is in progress, marks it to be drawn when the batch ends.
+		 * Does nothing if the same row, at the same version, is already drawn at this index.
+		 * @param force true to draw the row even if it appears unchanged
+		 */
+		void push(int index, T value, boolean force) {
+			Object version = versions == null || value == null ? null : versions.getVersion(value);
+			if (!force && index < drawnRows.size() && drawnRows.get(index) == value
+					&& (version == null ? drawnVersions.get(index) == null : version.equals(drawnVersions.get(index)))) {
+				return;
+			}
+			while (drawnRows.size() <= index) {
+				drawnRows.add(NOT_DRAWN);
+				drawnVersions.add(null);
+			}
+			drawnRows.set(index, value);
+			drawnVersions.set(index, version);
+
+			if (batching) {
+				pendingStart = Math.min(pendingStart, index);
+				pendingEnd = Math.max(pendingEnd, index + 1);
+			} else {
+				data.setRowData(index, Collections.singletonList(value));
+			}
+		}
+
+		private void truncateDrawn(int size) {
+			while (drawnRows.size() > size) {
+				drawnRows.remove(drawnRows.size() - 1);
+				drawnVersions.remove(drawnVersions.size() - 1);
+			}
+		}
+
+		/**
+		 * Checks if a change to any of the given paths could change what is drawn. If no paths
+		 * have been registered, every change is assumed to.
+		 */
+		boolean isRead(String... changed) {
+			if (paths.isEmpty() || paths.contains("")) {
+				return true;
+			}
+			for (String path : changed) {
+				for (String read : paths) {
+					// the same property, an object the column reads through, or a property of the
+					// object the column draws
+					if (read.equals(path) || read.startsWith(path + ".") || path.startsWith(read + ".")) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Starts collecting row changes instead of drawing each as it happens.
+		 */
+		void beginBatch() {
+			batching = true;
+		}
+
+		/**
+		 * Stops collecting row changes, and draws all changed rows at once. The row count is set
+		 * at most once, and all rows in the range that was changed are set in a single call.
+		 * 
+		 * @param editors the current editors, in order
+		 */
+		void endBatch(List<ValueAwareEditor<T>> editors) {
+			batching = false;
+			if (rowCountChanged) {
+				data.setRowCount(editors.size());
+				truncateDrawn(editors.size());
+			}
+			int end = Math.min(pendingEnd, editors.size());
+			if (pendingStart < end) {
+				List<T> rows = new ArrayList<T>(end - pendingStart);
+				for (int i = pendingStart; i < end; i++) {
+					rows.add(((IndexedEditor<T>) editors.get(i)).getValue());
+				}
+				data.setRowData(pendingStart, rows);
+			}
+			pendingStart = Integer.MAX_VALUE;
+			pendingEnd = -1;
+			rowCountChanged = false;
+		}
 	}
 
 	static class IndexedEditor<Q> implements ValueAwareEditor<Q> {
 		private int index;
 		private Q value;
-		private final HasData<Q> data;
+		private final HasDataEditorSource<Q> source;
 
-		IndexedEditor(int index, HasData<Q> data) {
+		IndexedEditor(int index, HasDataEditorSource<Q> source) {
 			this.index = index;
-			this.data = data;
+			this.source = source;
 		}
 
 		public Q getValue() {
@@ -82,16 +215,17 @@ public class HasDataFlushableEditor<T> extends ListEditor<T, ValueAwareEditor<T>
 
 		public void setIndex(int index) {
 			this.index = index;
-			push();
+			push(false);
 		}
 
 		public void setValue(Q value) {
 			this.value = value;
-			push();
+			// without versions, the row may have been modified in place
+			push(source.versions == null);
 		}
 
-		private void push() {
-			data.setRowData(index, Collections.singletonList(value));
+		private void push(boolean force) {
+			source.push(index, value, force);
 		}
 
 		public void flush() {
@@ -99,7 +233,10 @@ public class HasDataFlushableEditor<T> extends ListEditor<T, ValueAwareEditor<T>
 		}
 
 		public void onPropertyChange(String... paths) {
-
+			if (source.isRead(paths)) {
+				// the row is the same object, but its properties are not
+				push(true);
+			}
 		}
 
 		public void setDelegate(EditorDelegate<Q> delegate) {
@@ -109,6 +246,169 @@ public class HasDataFlushableEditor<T> extends ListEditor<T, ValueAwareEditor<T>
 		}
 	}
 
+	/**
+	 * Reads a version stamp from a row, which changes whenever the row is modified in place, so
+	 * that the row is drawn again even though it is the same object.
+	 *
+	 * @param <T> the type of each row
+	 */
+	public interface VersionProvider<T> {
+		/**
+		 * @param row
+		 * @return the row's current version, compared with equals()
+		 */
+		Object getVersion(T row);
+	}
+
+	/**
+	 * Told how an asynchronous flush is progressing.
+	 */
+	public interface FlushCallback {
+		/**
+		 * Called after each slice of changes has been committed, except the last.
+		 * @param committed the number of changes committed so far
+		 * @param total the number of changes being flushed
+		 */
+		void onProgress(int committed, int total);
+		/**
+		 * Called once every change has been committed, and the list has been flushed.
+		 */
+		void onComplete();
+	}
+
+	/**
+	 * A single cell changed through a {@link PendingFieldUpdateChange}. If the same cell is changed
+	 * several times before a flush, one Delta holds the value from before the first change, and
+	 * the value from the last.
+	 *
+	 * @param <T> the type of each row
+	 */
+	public static class Delta<T> {
+		private int index;
+		private final T row;
+		private final String path;
+		private final Object oldValue;
+		private Object newValue;
+
+		Delta(int index, T row, String path, Object oldValue, Object newValue) {
+			this.index = index;
+			this.row = row;
+			this.path = path;
+			this.oldValue = oldValue;
+			this.newValue = newValue;
+		}
+
+		/**
+		 * @return the index of the row when the cell was last changed
+		 */
+		public int getIndex() {
+			return index;
+		}
+		public T getRow() {
+			return row;
+		}
+		/**
+		 * @return the path of the column that was changed, as in {@link Columns#getPaths()}, or
+		 * null if the PendingFieldUpdateChange was created without one
+		 */
+		public String getPath() {
+			return path;
+		}
+		/**
+		 * @return the value the cell had before it was changed, or null if the
+		 * PendingFieldUpdateChange can't read it
+		 */
+		public Object getOldValue() {
+			return oldValue;
+		}
+		/**
+		 * @return the value given to the cell, before any DataConverter is applied
+		 */
+		public Object getNewValue() {
+			return newValue;
+		}
+	}
+
+	/**
+	 * The longest that changes are committed for before progress is reported. The scheduler may
+	 * run several slices before letting the browser continue.
+	 */
+	public static final int FLUSH_SLICE_MILLIS = 20;
+
+	/**
+	 * Commits a queue of changes from an incremental command, and then flushes the list.
+	 */
+	private class AsyncFlush implements RepeatingCommand {
+		private final List<Command> queue = new ArrayList<Command>();
+		// where each change not yet committed is in the queue, so a later change replaces it
+		private final Map<Object, Integer> queued = new HashMap<Object, Integer>();
+		private final List<FlushCallback> callbacks = new ArrayList<FlushCallback>();
+		private final Map<Object, Delta<T>> deltas = new LinkedHashMap<Object, Delta<T>>();
+		private int committed;
+
+		/**
+		 * Takes the pending changes and deltas. A change to a cell whose earlier change hasn't
+		 * been committed yet replaces it in the queue, and one Delta is kept for each cell.
+		 */
+		void add(Map<Object, Command> changes, Map<Object, Delta<T>> pendingDeltas) {
+			for (Map.Entry<Object, Command> change : changes.entrySet()) {
+				Integer position = queued.get(change.getKey());
+				if (position != null && position >= committed) {
+					queue.set(position, change.getValue());
+				} else {
+					queued.put(change.getKey(), queue.size());
+					queue.add(change.getValue());
+				}
+			}
+			for (Map.Entry<Object, Delta<T>> pending : pendingDeltas.entrySet()) {
+				Delta<T> delta = deltas.get(pending.getKey());
+				if (delta == null) {
+					deltas.put(pending.getKey(), pending.getValue());
+				} else {
+					// keep the value from before the first change
+					delta.index = pending.getValue().index;
+					delta.newValue = pending.getValue().newValue;
+				}
+			}
+			changes.clear();
+			pendingDeltas.clear();
+		}
+
+		public boolean execute() {
+			if (asyncFlush != this) {
+				// already finished by a call to flush()
+				return false;
+			}
+			Duration duration = new Duration();
+			while (committed < queue.size() && duration.elapsedMillis() < FLUSH_SLICE_MILLIS) {
+				queue.get(committed++).execute();
+			}
+			if (committed < queue.size()) {
+				for (FlushCallback callback : callbacks) {
+					callback.onProgress(committed, queue.size());
+				}
+				return true;
+			}
+			finish();
+			return false;
+		}
+
+		/**
+		 * Commits anything left in the queue, and flushes the list.
+		 */
+		void finish() {
+			asyncFlush = null;
+			while (committed < queue.size()) {
+				queue.get(committed++).execute();
+			}
+			flushedDeltas = new ArrayList<Delta<T>>(deltas.values());
+			flushList();
+			for (FlushCallback callback : callbacks) {
+				callback.onComplete();
+			}
+		}
+	}
+
 	/**
 	 * Create a HasDataFlushableEditor backed by a HasData.
 	 * 
@@ -124,34 +424,249 @@ public class HasDataFlushableEditor<T> extends ListEditor<T, ValueAwareEditor<T>
 	 * Prevent subclassing.
 	 */
 	HasDataFlushableEditor(HasData<T> data) {
-		super(new HasDataEditorSource<T>(data));
+		this(new HasDataEditorSource<T>(data));
+	}
+	private HasDataFlushableEditor(HasDataEditorSource<T> source) {
+		super(source);
+		this.source = source;
+	}
+	private final HasDataEditorSource<T> source;
+	private final Map<Object, Command> changes = new LinkedHashMap<Object, Command>();
+	private final Map<Object, Delta<T>> pendingDeltas = new LinkedHashMap<Object, Delta<T>>();
+	private List<Delta<T>> flushedDeltas = Collections.emptyList();
+	private AsyncFlush asyncFlush;
+
+	/**
+	 * Sets how to tell that a row has been modified in place. With one, setting a value (such as
+	 * when the same list is set again) only draws the rows whose object or version has changed.
+	 * Without one, every row that is set is drawn.
+	 * @param versions the version provider, or null to compare rows by identity alone
+	 */
+	public void setVersionProvider(VersionProvider<? super T> versions) {
+		source.versions = versions;
+	}
+
+	/**
+	 * Registers paths read by the columns of the table, so that changes to other properties
+	 * don't redraw rows. Generated Columns types call this from configure(). The empty path
+	 * means a column draws the whole row, so any change redraws it.
+	 * @param paths
+	 */
+	public void addPaths(String... paths) {
+		source.paths.addAll(Arrays.asList(paths));
 	}
-	private List<Command> changes = new ArrayList<Command>();
 
+	/**
+	 * Redraws the row at the given index, if any of the changed paths are read by the table's
+	 * columns. Other rows are not redrawn.
+	 * @param index
+	 * @param paths the properties of the row that changed, as in {@link Columns#getPaths()}
+	 */
+	public void onPropertyChange(int index, String... paths) {
+		getEditors().get(index).onPropertyChange(paths);
+	}
+
+	/**
+	 * Rows are drawn in a single batch once the new list has been set up, instead of as each row
+	 * editor is created.
+	 */
+	@Override
+	public void setValue(List<T> value) {
+		source.beginBatch();
+		try {
+			super.setValue(value);
+		} finally {
+			source.endBatch(getEditors());
+		}
+	}
+
+	/**
+	 * Commits every pending change, then flushes the list, before returning. If an asynchronous
+	 * flush is in progress, its remaining changes are committed first, and it completes now.
+	 */
 	@Override
 	public void flush() {
+		if (asyncFlush != null) {
+			// finish the flush in progress, along with anything changed since it started
+			asyncFlush.add(changes, pendingDeltas);
+			asyncFlush.finish();
+			return;
+		}
+
 		// flush item changes
-		for (Command change : changes) {
+		for (Command change : changes.values()) {
 			change.execute();
 		}
+		changes.clear();
+		flushedDeltas = new ArrayList<Delta<T>>(pendingDeltas.values());
+		pendingDeltas.clear();
 
+		flushList();
+	}
+
+	/**
+	 * Commits the pending changes from an incremental command, a slice of at most
+	 * {@link #FLUSH_SLICE_MILLIS} at a time, then flushes the list. Changes made after this is
+	 * called are not included, and wait for the next flush.
+	 * 
+	 * If an asynchronous flush is already in progress, the pending changes are added to the end of
+	 * it, replacing any change to the same cell that it hasn't committed yet, and the callback is
+	 * told when all of them are committed.
+	 * 
+	 * @param callback told of progress and completion, may be null
+	 */
+	public void flushAsync(FlushCallback callback) {
+		if (asyncFlush == null) {
+			asyncFlush = new AsyncFlush();
+			Scheduler.get().scheduleIncremental(asyncFlush);
+		}
+		asyncFlush.add(changes, pendingDeltas);
+		if (callback != null) {
+			asyncFlush.callbacks.add(callback);
+		}
+	}
 
+	private void flushList() {
 		// flush the list changes
-		super.flush();
+		source.beginBatch();
+		try {
+			super.flush();
+		} finally {
+			source.endBatch(getEditors());
+		}
 	}
 
+	/**
+	 * Adds a change to be applied when the editor is flushed.
+	 * 
+	 * @param change
+	 */
 	public void addChange(Command change) {
-		changes.add(change);
+		addChange(change, change);
+	}
+
+	/**
+	 * Adds a change to be applied when the editor is flushed, replacing any pending change that
+	 * was added with an equal key.
+	 * 
+	 * @param key identifies what is being changed
+	 * @param change
+	 */
+	public void addChange(Object key, Command change) {
+		// remove first so that changes are still applied in the order they were last made
+		changes.remove(key);
+		changes.put(key, change);
+	}
+
+	/**
+	 * @return the number of changes that will be applied at the next flush
+	 */
+	public int getPendingChangeCount() {
+		return changes.size();
+	}
+
+	/**
+	 * Lists the cells changed through a PendingFieldUpdateChange and committed by the most recent
+	 * flush, in the order they were last changed. Replaced when the next flush completes.
+	 * @return
+	 */
+	public List<Delta<T>> getFlushedDeltas() {
+		return Collections.unmodifiableList(flushedDeltas);
+	}
+
+	/**
+	 * @return the rows with at least one cell changed by the most recent flush
+	 */
+	public Set<T> getDirtyRows() {
+		Set<T> rows = new LinkedHashSet<T>();
+		for (Delta<T> delta : flushedDeltas) {
+			rows.add(delta.getRow());
+		}
+		return rows;
+	}
+
+	/**
+	 * @return the paths of the columns changed by the most recent flush, as in
+	 * {@link Columns#getPaths()}
+	 */
+	public Set<String> getDirtyPaths() {
+		Set<String> paths = new LinkedHashSet<String>();
+		for (Delta<T> delta : flushedDeltas) {
+			if (delta.getPath() != null) {
+				paths.add(delta.getPath());
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * Identifies a single cell - the row object, compared by identity, and the FieldUpdater for
+	 * that column. The row's index isn't used, as it changes when the list is reordered.
+	 */
+	private static final class CellKey {
+		private final Object row;
+		private final Object column;
+
+		CellKey(Object row, Object column) {
+			this.row = row;
+			this.column = column;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CellKey)) {
+				return false;
+			}
+			CellKey other = (CellKey) obj;
+			return row == other.row && column == other.column;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(row) + column.hashCode();
+		}
 	}
 
 	public abstract class PendingFieldUpdateChange<C> implements FieldUpdater<T, C> {
+		private final String path;
+
+		public PendingFieldUpdateChange() {
+			this(null);
+		}
+		/**
+		 * @param path the path of the column being changed, reported in each {@link Delta}
+		 */
+		public PendingFieldUpdateChange(String path) {
+			this.path = path;
+		}
+
 		public void update(final int index, final T object, final C value) {
-			addChange(new Command() {
+			CellKey key = new CellKey(object, this);
+			Delta<T> delta = pendingDeltas.remove(key);
+			if (delta == null) {
+				delta = new Delta<T>(index, object, path, getCurrentValue(object), value);
+			} else {
+				delta.index = index;
+				delta.newValue = value;
+			}
+			pendingDeltas.put(key, delta);
+
+			addChange(key, new Command() {
 				public void execute() {
 					commit(index, object, value);
 				}
 			});
 		}
 		public abstract void commit(int index, T object, C value);
+
+		/**
+		 * Reads the value the cell has before it is changed, to report as the {@link Delta}'s old
+		 * value. Generated columns read it as the Column does, otherwise null is reported.
+		 * @param object
+		 * @return
+		 */
+		protected C getCurrentValue(T object) {
+			return null;
+		}
 	}
 }
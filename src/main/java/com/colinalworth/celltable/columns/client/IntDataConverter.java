@@ -0,0 +1,36 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.client;
+
+/**
+ * {@link DataConverter} that can also read int values without boxing them. When a Column's path
+ * ends at a primitive int (or short, byte or char) getter, the generated code will call
+ * fromIntToCell instead of fromModelToCell.
+ * 
+ * @author colin
+ *
+ * @param <C> the type of data that the {@link com.google.gwt.cell.client.Cell} expects
+ */
+public interface IntDataConverter<C> extends DataConverter<Integer, C> {
+	/**
+	 * Converts a primitive value in the model into something that can be displayed.
+	 * 
+	 * @param model
+	 * @return
+	 */
+	C fromIntToCell(int model);
+}
@@ -0,0 +1,188 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArrayNumber;
+import com.google.gwt.user.cellview.client.Column;
+import com.google.gwt.user.cellview.client.ColumnSortEvent;
+import com.google.gwt.user.cellview.client.ColumnSortEvent.ListHandler;
+
+/**
+ * {@link ListHandler} that can sort large lists by reading a key from each row only once, instead
+ * of reading values from both rows in each comparison. The keys for each row are collected into an
+ * array, an array of row indexes is sorted by those keys, and the list is then reordered to match.
+ *
+ * When passed to {@link Columns#configure(com.google.gwt.user.cellview.client.AbstractCellTable, HasDataFlushableEditor, ListHandler)},
+ * keys will be set up for each {@link Columns.Sortable} column that reads numbers, dates or
+ * Strings. Other columns will be sorted with their Comparator, as ListHandler would.
+ *
+ * The sort is stable in both directions: as in ListHandler, a descending sort reverses the order
+ * of the keys, but rows with equal keys keep their original order. Null values sort first when
+ * ascending, and last when descending.
+ *
+ * @author colin
+ *
+ * @param <T> the type of data in the list
+ */
+public class KeyedListHandler<T> extends ListHandler<T> {
+	/**
+	 * Reads a numeric key from a row. Null values should be returned as Double.NaN.
+	 */
+	public interface NumberKey<T> {
+		double getKey(T row);
+	}
+	/**
+	 * Reads a String key from a row.
+	 */
+	public interface StringKey<T> {
+		String getKey(T row);
+	}
+
+	private final Map<Column<?, ?>, NumberKey<T>> numberKeys = new HashMap<Column<?, ?>, NumberKey<T>>();
+	private final Map<Column<?, ?>, StringKey<T>> stringKeys = new HashMap<Column<?, ?>, StringKey<T>>();
+
+	public KeyedListHandler(List<T> list) {
+		super(list);
+	}
+
+	public void setNumberKey(Column<T, ?> column, NumberKey<T> key) {
+		numberKeys.put(column, key);
+	}
+
+	public void setStringKey(Column<T, ?> column, StringKey<T> key) {
+		stringKeys.put(column, key);
+	}
+
+	@Override
+	public void onColumnSort(ColumnSortEvent event) {
+		Column<?, ?> column = event.getColumn();
+		if (column == null) {
+			return;
+		}
+		if (numberKeys.containsKey(column)) {
+			sort(getList(), numberKeys.get(column), event.isSortAscending());
+		} else if (stringKeys.containsKey(column)) {
+			sort(getList(), stringKeys.get(column), event.isSortAscending());
+		} else {
+			super.onColumnSort(event);
+		}
+	}
+
+	/**
+	 * Sorts the list by the numeric key read from each row.
+	 *
+	 * @param list
+	 * @param key
+	 * @param ascending
+	 */
+	public static <T> void sort(List<T> list, NumberKey<T> key, boolean ascending) {
+		final JsArrayNumber keys = JavaScriptObject.createArray().cast();
+		for (int i = 0; i < list.size(); i++) {
+			keys.set(i, key.getKey(list.get(i)));
+		}
+		reorder(list, sortIndexes(new KeyComparator() {
+			public int compare(int a, int b) {
+				double keyA = keys.get(a);
+				double keyB = keys.get(b);
+				if (keyA < keyB) {
+					return -1;
+				} else if (keyA > keyB) {
+					return 1;
+				} else if (keyA == keyB) {
+					return 0;
+				}
+				// at least one is NaN, i.e. null
+				boolean nanA = keyA != keyA;
+				boolean nanB = keyB != keyB;
+				return nanA == nanB ? 0 : (nanA ? -1 : 1);
+			}
+		}, list.size(), ascending));
+	}
+
+	/**
+	 * Sorts the list by the String key read from each row.
+	 *
+	 * @param list
+	 * @param key
+	 * @param ascending
+	 */
+	public static <T> void sort(List<T> list, StringKey<T> key, boolean ascending) {
+		final String[] keys = new String[list.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = key.getKey(list.get(i));
+		}
+		reorder(list, sortIndexes(new KeyComparator() {
+			public int compare(int a, int b) {
+				String keyA = keys[a];
+				String keyB = keys[b];
+				return keyA == keyB ? 0 : (keyA == null ? -1 : (keyB == null ? 1 : keyA.compareTo(keyB)));
+			}
+		}, list.size(), ascending));
+	}
+
+	/**
+	 * Compares the keys at two row indexes.
+	 */
+	private interface KeyComparator {
+		int compare(int a, int b);
+	}
+
+	/**
+	 * Builds the permutation of row indexes that puts the keys in order, using a merge sort so the
+	 * order of rows with equal keys is kept.
+	 */
+	private static int[] sortIndexes(KeyComparator comparator, int size, boolean ascending) {
+		int[] indexes = new int[size];
+		for (int i = 0; i < size; i++) {
+			indexes[i] = i;
+		}
+		int[] buffer = new int[size];
+		int direction = ascending ? 1 : -1;
+		for (int width = 1; width < size; width *= 2) {
+			for (int start = 0; start < size; start += 2 * width) {
+				int middle = Math.min(start + width, size);
+				int end = Math.min(start + 2 * width, size);
+				int left = start;
+				int right = middle;
+				for (int i = start; i < end; i++) {
+					if (left < middle && (right >= end || direction * comparator.compare(indexes[left], indexes[right]) <= 0)) {
+						buffer[i] = indexes[left++];
+					} else {
+						buffer[i] = indexes[right++];
+					}
+				}
+			}
+			int[] swap = indexes;
+			indexes = buffer;
+			buffer = swap;
+		}
+		return indexes;
+	}
+
+	private static <T> void reorder(List<T> list, int[] indexes) {
+		List<T> original = new ArrayList<T>(list);
+		for (int i = 0; i < indexes.length; i++) {
+			list.set(i, original.get(indexes[i]));
+		}
+	}
+}
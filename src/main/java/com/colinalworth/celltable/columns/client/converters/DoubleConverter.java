@@ -16,21 +16,32 @@
  */
 package com.colinalworth.celltable.columns.client.converters;
 
-import com.colinalworth.celltable.columns.client.DataConverter;
+import com.colinalworth.celltable.columns.client.DoubleDataConverter;
 import com.google.gwt.i18n.client.NumberFormat;
 
 /**
  * @author colin
  *
  */
-public class DoubleConverter implements DataConverter<Double, String> {
+public class DoubleConverter implements DoubleDataConverter<String>, HasNumberFormat {
+	private NumberFormat format = NumberFormat.getDecimalFormat();
+
+	public void setNumberFormat(NumberFormat format) {
+		this.format = format;
+	}
+
 	@Override
 	public Double fromCellToModel(String cell) {
-		return "".equals(cell) ? null : NumberFormat.getDecimalFormat().parse(cell);
+		return "".equals(cell) ? null : format.parse(cell);
 	}
 
 	@Override
 	public String fromModelToCell(Double model) {
-		return model == null ? "" : NumberFormat.getDecimalFormat().format(model);
+		return model == null ? "" : format.format(model.doubleValue());
+	}
+
+	@Override
+	public String fromDoubleToCell(double model) {
+		return format.format(model);
 	}
 }
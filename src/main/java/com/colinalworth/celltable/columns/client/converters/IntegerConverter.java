@@ -16,20 +16,47 @@
  */
 package com.colinalworth.celltable.columns.client.converters;
 
-import com.colinalworth.celltable.columns.client.DataConverter;
+import com.colinalworth.celltable.columns.client.IntDataConverter;
+import com.google.gwt.i18n.client.NumberFormat;
 
 /**
+ * Converts integers to and from plain digits, or using a NumberFormat if one is set. Text that
+ * isn't a whole number within the range of an int throws a NumberFormatException, as
+ * {@link Integer#parseInt(String)} would, rather than being truncated.
+ * 
  * @author colin
  *
  */
-public class IntegerConverter implements DataConverter<Integer, String> {
+public class IntegerConverter implements IntDataConverter<String>, HasNumberFormat {
+	private NumberFormat format;
+
+	public void setNumberFormat(NumberFormat format) {
+		this.format = format;
+	}
+
 	@Override
 	public Integer fromCellToModel(String cell) {
-		return "".equals(cell) ? null : Integer.parseInt(cell);
+		if ("".equals(cell)) {
+			return null;
+		}
+		if (format == null) {
+			return Integer.parseInt(cell);
+		}
+		double value = format.parse(cell);
+		if (value != Math.floor(value) || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			// also rejects NaN and infinity, rather than truncating them
+			throw new NumberFormatException("Not an int: " + cell);
+		}
+		return (int) value;
 	}
 
 	@Override
 	public String fromModelToCell(Integer model) {
-		return model.toString();
+		return model == null ? "" : fromIntToCell(model);
+	}
+
+	@Override
+	public String fromIntToCell(int model) {
+		return format == null ? String.valueOf(model) : format.format(model);
 	}
 }
@@ -24,12 +24,18 @@ import com.google.gwt.i18n.client.NumberFormat;
  * displaying/editing the data.
  * 
  */
-public class NumberConverter implements DataConverter<Number, String> {
+public class NumberConverter implements DataConverter<Number, String>, HasNumberFormat {
+	private NumberFormat format = NumberFormat.getDecimalFormat();
+
+	public void setNumberFormat(NumberFormat format) {
+		this.format = format;
+	}
+
 	public Number fromCellToModel(String cell) {
-		return "".equals(cell) ? null : NumberFormat.getDecimalFormat().parse(cell);
+		return "".equals(cell) ? null : format.parse(cell);
 	}
 
 	public String fromModelToCell(Number model) {
-		return model == null ? "" : NumberFormat.getDecimalFormat().format(model);
+		return model == null ? "" : format.format(model);
 	}
 }
@@ -17,45 +17,133 @@
 package com.colinalworth.celltable.columns.rebind;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import com.colinalworth.celltable.columns.client.ColumnAggregate;
+import com.colinalworth.celltable.columns.client.ColumnFilter;
+import com.colinalworth.celltable.columns.client.ColumnGrouping;
+import com.colinalworth.celltable.columns.client.Columns.Aggregate;
+import com.colinalworth.celltable.columns.client.Columns.ConvertedWith;
+import com.colinalworth.celltable.columns.client.Columns.Key;
+import com.colinalworth.celltable.columns.client.ColumnsMetrics;
+import com.colinalworth.celltable.columns.client.CsvExport;
 import com.colinalworth.celltable.columns.client.HasDataFlushableEditor;
+import com.colinalworth.celltable.columns.client.KeyedListHandler;
+import com.colinalworth.celltable.columns.client.converters.HasNumberFormat;
 import com.colinalworth.celltable.columns.rebind.model.ColumnSetModel;
 import com.colinalworth.celltable.columns.rebind.model.ColumnSetModel.ColumnModel;
+import com.colinalworth.celltable.columns.rebind.model.ColumnSetModel.PathNode;
+import com.colinalworth.celltable.columns.rebind.model.ColumnSetModel.SortKeyType;
+import com.google.gwt.cell.client.Cell;
 import com.google.gwt.cell.client.FieldUpdater;
 import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.ext.BadPropertyValueException;
+import com.google.gwt.core.ext.CachedGeneratorResult;
 import com.google.gwt.core.ext.Generator;
 import com.google.gwt.core.ext.GeneratorContext;
+import com.google.gwt.core.ext.IncrementalGenerator;
+import com.google.gwt.core.ext.RebindMode;
+import com.google.gwt.core.ext.RebindResult;
+import com.google.gwt.core.ext.SelectionProperty;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.core.ext.TreeLogger.Type;
 import com.google.gwt.core.ext.UnableToCompleteException;
 import com.google.gwt.core.ext.typeinfo.JClassType;
-import com.google.gwt.core.ext.typeinfo.JPrimitiveType;
-import com.google.gwt.core.ext.typeinfo.JType;
+import com.google.gwt.core.ext.typeinfo.JRealClassType;
 import com.google.gwt.core.ext.typeinfo.TypeOracle;
 import com.google.gwt.dev.util.Name;
-import com.google.gwt.user.cellview.client.CellTable;
+import com.google.gwt.i18n.client.NumberFormat;
+import com.google.gwt.user.cellview.client.AbstractCellTable;
 import com.google.gwt.user.cellview.client.Column;
+import com.google.gwt.user.cellview.client.ColumnSortEvent.ListHandler;
+import com.google.gwt.user.cellview.client.DefaultCellTableBuilder;
+import com.google.gwt.user.cellview.client.TextHeader;
 import com.google.gwt.user.client.ui.HasHorizontalAlignment;
 import com.google.gwt.user.client.ui.HasVerticalAlignment;
 import com.google.gwt.user.rebind.ClassSourceFileComposerFactory;
 import com.google.gwt.user.rebind.SourceWriter;
+import com.google.gwt.view.client.ListDataProvider;
+import com.google.gwt.view.client.ProvidesKey;
 
 /**
+ * Generates implementations of {@link com.colinalworth.celltable.columns.client.Columns}
+ * subinterfaces.
+ * 
+ * Results are cached between compiles - a previously generated type will be reused as long as
+ * none of the types it was built from (the interface, its bean and factory types, cells,
+ * converters, field updaters and any types found while following paths) have been modified since.
+ * 
+ * When the celltable.columns.instrument property is true, calls to read, convert and update values
+ * are timed and reported to {@link ColumnsMetrics}. Otherwise no timing code is generated.
+ * 
+ * When the celltable.columns.compact property is true, the columns share a single Column and
+ * FieldUpdater type, which find the property to read or write with a switch on the column index.
+ * This makes for much less JavaScript when many columns are declared, at the cost of the switch
+ * in each call.
+ * 
  * @author colin
  *
  */
-public class ColumnsGenerator extends Generator {
+public class ColumnsGenerator extends IncrementalGenerator {
+	/**
+	 * Must be changed any time the generated code changes, so that old cached results are not
+	 * reused.
+	 */
+	private static final long GENERATOR_VERSION_ID = 21L;
+
+	/**
+	 * Key for the list of type names the cached result was generated from.
+	 */
+	private static final String DEPENDENCIES_KEY = "dependencies";
+
+	/**
+	 * Deferred binding property to turn on timing of generated code, see {@link ColumnsMetrics}.
+	 */
+	private static final String INSTRUMENT_PROPERTY = "celltable.columns.instrument";
+
+	/**
+	 * Key for the value of {@link #INSTRUMENT_PROPERTY} the cached result was generated with.
+	 */
+	private static final String INSTRUMENT_KEY = "instrument";
+
+	/**
+	 * Deferred binding property to generate smaller code, where all columns share one Column type
+	 * which reads values through a single switch on the column index.
+	 */
+	private static final String COMPACT_PROPERTY = "celltable.columns.compact";
+
+	/**
+	 * Key for the value of {@link #COMPACT_PROPERTY} the cached result was generated with.
+	 */
+	private static final String COMPACT_KEY = "compact";
+
 	//private TreeLogger logger;
 	private GeneratorContext context;
 
-	private Set<String> names = new HashSet<String>();
+	// what the GWT version in the current context supports, looked up once per context
+	private Boolean tableBuilderSupported;
+
+	// nanoseconds spent in each phase of generation, only recorded if set, by ColumnsGeneratorTimer
+	Map<String, Long> phaseTimes;
+
+	@Override
+	public long getVersionId() {
+		return GENERATOR_VERSION_ID;
+	}
 
 	@Override
-	public String generate(TreeLogger logger, GeneratorContext context, String typeName) throws UnableToCompleteException {
+	public RebindResult generateIncrementally(TreeLogger logger, GeneratorContext context, String typeName) throws UnableToCompleteException {
 		//this.logger = logger;
-		this.context = context;
+		long start = startPhase();
+		if (context != this.context) {
+			this.context = context;
+			tableBuilderSupported = null;
+		}
 
 		TypeOracle oracle = context.getTypeOracle();
 		JClassType toGenerate = oracle.findType(typeName).isInterface();
@@ -66,24 +154,77 @@ public class ColumnsGenerator extends Generator {
 
 		String packageName = toGenerate.getPackage().getName();
 		String simpleSourceName = toGenerate.getName().replace('.', '_') + "_Impl";
+		String qualifiedName = packageName + "." + simpleSourceName;
+
+		boolean instrument = getBooleanProperty(logger, INSTRUMENT_PROPERTY);
+		boolean compact = getBooleanProperty(logger, COMPACT_PROPERTY);
+
+		if (canReuseCachedResult(logger, qualifiedName, instrument, compact)) {
+			return new RebindResult(RebindMode.USE_ALL_CACHED, qualifiedName);
+		}
+
 		PrintWriter pw = context.tryCreate(logger, packageName, simpleSourceName);
 		if (pw == null) {
-			return packageName + "." + simpleSourceName;
+			return new RebindResult(RebindMode.USE_EXISTING, qualifiedName);
 		}
 
-		ColumnSetModel columnSet = new ColumnSetModel(toGenerate, context, logger, names);
+		if (toGenerate.isAnnotationPresent(Key.class) && toGenerate.getAnnotation(Key.class).value().length() == 0) {
+			logger.log(Type.ERROR, "@Key on " + typeName + " must name the path to read as the key");
+			throw new UnableToCompleteException();
+		}
+
+		long phaseStart = endPhase("other", start);
+		ColumnSetModel columnSet = new ColumnSetModel(toGenerate, context, logger, new HashSet<String>());
+		phaseStart = endPhase("model", phaseStart);
+		if (columnSet.getKeyPaths().size() > 1) {
+			logger.log(Type.ERROR, "Only one @Key may be declared in " + typeName + ", found " + columnSet.getKeyPaths());
+			throw new UnableToCompleteException();
+		}
+		List<String> groupBy = new ArrayList<String>();
+		for (ColumnModel c : columnSet.getColumnModels()) {
+			if (c.isGroupBy()) {
+				groupBy.add(c.getMethodName());
+			}
+		}
+		if (groupBy.size() > 1) {
+			logger.log(Type.ERROR, "Only one @GroupBy may be declared in " + typeName + ", found " + groupBy);
+			throw new UnableToCompleteException();
+		}
+		for (ColumnModel c : columnSet.getColumnModels()) {
+			if (c.getAggregateFunction() != null && !c.canAggregate()) {
+				logger.log(Type.ERROR, "Cannot find the " + c.getAggregateFunction() + " of " + c.getMethodName() + ", as "
+						+ c.getModelType().getQualifiedSourceName() + " is not a number");
+				throw new UnableToCompleteException();
+			}
+		}
 
 		//public class X implements X {
 		ClassSourceFileComposerFactory factory = new ClassSourceFileComposerFactory(packageName, simpleSourceName);
 		factory.addImplementedInterface(typeName);
 
 		factory.addImport(Name.getSourceNameForClass(GWT.class));
-		factory.addImport(Name.getSourceNameForClass(CellTable.class));
+		factory.addImport(Name.getSourceNameForClass(Cell.class));
+		factory.addImport(Name.getSourceNameForClass(AbstractCellTable.class));
 		factory.addImport(Name.getSourceNameForClass(HasDataFlushableEditor.class));
 		factory.addImport(Name.getSourceNameForClass(Column.class));
 		factory.addImport(Name.getSourceNameForClass(HasHorizontalAlignment.class));
 		factory.addImport(Name.getSourceNameForClass(HasVerticalAlignment.class));
 		factory.addImport(Name.getSourceNameForClass(FieldUpdater.class));
+		factory.addImport(Name.getSourceNameForClass(Comparator.class));
+		factory.addImport(Name.getSourceNameForClass(ListHandler.class));
+		factory.addImport(Name.getSourceNameForClass(KeyedListHandler.class));
+		factory.addImport(Name.getSourceNameForClass(DefaultCellTableBuilder.class));
+		factory.addImport(Name.getSourceNameForClass(NumberFormat.class));
+		factory.addImport(Name.getSourceNameForClass(CsvExport.class));
+		factory.addImport(Name.getSourceNameForClass(ProvidesKey.class));
+		factory.addImport(Name.getSourceNameForClass(ColumnFilter.class));
+		factory.addImport(Name.getSourceNameForClass(ListDataProvider.class));
+		factory.addImport(Name.getSourceNameForClass(ColumnAggregate.class));
+		factory.addImport(Name.getSourceNameForClass(TextHeader.class));
+		factory.addImport(Name.getSourceNameForClass(ColumnGrouping.class));
+		if (instrument) {
+			factory.addImport(Name.getSourceNameForClass(ColumnsMetrics.class));
+		}
 		factory.addImport(columnSet.getBeanName());
 
 		SourceWriter sw = factory.createSourceWriter(context, pw);
@@ -91,7 +232,6 @@ public class ColumnsGenerator extends Generator {
 
 		//wire up the factory, if any
 		if (columnSet.hasFactory()) {
-			names.add("factory");
 			sw.println("private %1$s factory;", columnSet.getFactoryClassName());
 			sw.println("public void setFactory(%1$s factory) {", columnSet.getFactoryClassName());
 			sw.indent();
@@ -101,119 +241,274 @@ public class ColumnsGenerator extends Generator {
 			sw.println("}");
 		}
 
+		writeKeyProvider(sw, columnSet);
+		writeAggregates(sw, columnSet);
+		writeGrouping(sw, columnSet);
+
+		boolean tableBuilder = columnSet.hasTableBuilder() && supportsTableBuilder();
+		if (columnSet.hasTableBuilder() && !tableBuilder) {
+			logger.log(Type.WARN, "Your version of GWT does not appear to support CellTableBuilder, no table builder will be generated.");
+		}
+		if (tableBuilder && !columnSet.hasProjectedColumns()) {
+			logger.log(Type.WARN, "@GeneratedTableBuilder has no effect on " + typeName
+					+ ": no columns share a property, so no table builder will be generated.");
+			tableBuilder = false;
+		}
+		if (tableBuilder) {
+			sw.println("private %1$s %2$s;", columnSet.getBeanName(), columnSet.getProjectedRowFieldName());
+		}
+
 		// generate column methods
-		for (ColumnModel c : columnSet.getColumnModels()) {
+		phaseStart = endPhase("other", phaseStart);
+		List<ColumnModel> columns = columnSet.getColumnModels();
+		for (int index = 0; index < columns.size(); index++) {
+			ColumnModel c = columns.get(index);
+			// with @Shared, stateless cells and columns are kept in static fields, built by the first
+			// instance. Columns that read per-instance state (editors, projected values, the compact
+			// switch) are never shared.
+			boolean sharedCell = columnSet.isShared() && c.isCellShareable();
+			boolean sharedColumn = sharedCell && !c.isEditable() && !compact && !(tableBuilder && c.isProjected());
+
 			// make the field 
-			// TODO: no sense in building multiple copies, right?
-			sw.println("private %1$s %2$s;", c.getCellClassName(), c.getCellFieldName());
+			sw.println("private %1$s%2$s %3$s;", sharedCell ? "static " : "", c.getCellClassName(), c.getCellFieldName());
 
-			sw.println("private Column<%1$s,%2$s> %3$s;", columnSet.getBeanName(), c.getCellDataTypeName(), c.getColumnFieldName());
+			sw.println("private %1$sColumn<%2$s,%3$s> %4$s;", sharedColumn ? "static " : "", columnSet.getBeanName(), c.getCellDataTypeName(), c.getColumnFieldName());
+
+			// retain the converter, if any, so reading and writing the data doesn't create new ones
+			if (c.getConverterFieldName() != null) {
+				// a shared column can only use a shared converter
+				boolean singleton = c.getConverterScope() == ConvertedWith.Scope.SINGLETON || sharedColumn;
+				sw.println("private %1$sfinal %2$s %3$s = GWT.create(%2$s.class);",
+						singleton ? "static " : "", c.getConverterClassName(), c.getConverterFieldName());
+				if (c.hasFormat()) {
+					sw.println("%1$s{", singleton ? "static " : "");
+					sw.indentln("%1$s.setNumberFormat(%2$s);", c.getConverterFieldName(), c.getFormatExpression());
+					sw.println("}");
+				}
+			}
+			if (c.hasFormat() && (c.getConverterFieldName() == null || !c.isConverterAssignableTo(HasNumberFormat.class))) {
+				logger.log(Type.ERROR, "@Format on " + c.getMethodName() + " requires a @ConvertedWith converter that implements "
+						+ HasNumberFormat.class.getSimpleName() + ", and is not scoped to each call");
+				throw new UnableToCompleteException();
+			}
+
+			if (tableBuilder && c.isProjected()) {
+				sw.println("private %1$s %2$s;", c.getCellDataTypeName(), c.getProjectedValueFieldName());
+			}
+
+			if (c.isSortable()) {
+				phaseStart = endPhase("columns", phaseStart);
+				writeComparator(logger, sw, columnSet, c);
+				writeSortKey(sw, columnSet, c);
+				phaseStart = endPhase("comparators", phaseStart);
+			}
 			sw.println();
 
 			// make the method: public MyCell myDataMember() {
 			//sw.println("@Override");//jdk 5 doesnt like this
 			sw.println("public %1$s %2$s() {", c.getCellClassName(), c.getMethodName());
 			sw.indent();
-			sw.println("if (%s == null) {", c.getCellFieldName());
-			sw.indent();
+			if (sharedColumn) {
+				// built in a static method, so the shared column doesn't keep this instance
+				sw.println("if (%s == null) {", c.getColumnFieldName());
+				sw.indentln("%1$s();", c.getInitMethodName());
+				sw.println("}");
+				sw.println("return %s;", c.getCellFieldName());
+				sw.outdent();
+				sw.println("}");
+				sw.println("private static void %1$s() {", c.getInitMethodName());
+				sw.indent();
+			} else {
+				sw.println("if (%s == null) {", c.getColumnFieldName());
+				sw.indent();
+			}
 
 			//create the cell
-			sw.println("%1$s = %2$s;", c.getCellFieldName(), c.getCellCreateExpression());
+			if (sharedCell && !sharedColumn) {
+				sw.println("if (%1$s == null) {", c.getCellFieldName());
+				sw.indentln("%1$s = %2$s;", c.getCellFieldName(), c.getCellCreateExpression());
+				sw.println("}");
+			} else {
+				sw.println("%1$s = %2$s;", c.getCellFieldName(), c.getCellCreateExpression());
+			}
 
 			//create the column - probably should be done later in the case of using HasDataFlushableEditor
-			sw.println("%1$s = new Column<%2$s,%3$s> (%4$s) {", c.getColumnFieldName(), columnSet.getBeanName(), c.getCellDataTypeName(), c.getCellFieldName());
-			sw.indent();
-
-			sw.println("@Override");
-			sw.println("public %1$s getValue(%2$s bean) {", c.getCellDataTypeName(), columnSet.getBeanName());
-			sw.indent();
-			sw.println("return %1$s;", c.getGetterInModel("bean"));
-			sw.outdent();
-			sw.println("}");
-
-			sw.outdent();// end anon Column class
-			sw.println("};");
+			if (compact) {
+				// all columns share one Column type, which reads the value by index
+				sw.println("%1$s = %6$s(%2$d, %3$s, %4$s, %5$s);", c.getColumnFieldName(), index, c.getCellFieldName(),
+						c.getHorizontalAlignment(), c.getVerticalAlignment(), columnSet.getCreateColumnMethodName());
+			} else {
+				writeColumn(sw, toGenerate, columnSet, c, tableBuilder, instrument);
+			}
 
 			// Refactor at least this part out, in anticipation of a proper link to the Editor framework
 			// TODO this is done by replacement right now, fix that.
 			if (c.isEditable()) {
-				if (!c.hasCustomFieldUpdater()) {
+				if (!c.hasCustomFieldUpdater() && compact) {
+					sw.println("%1$s.setFieldUpdater(new %4$s<%2$s>(%3$d));", c.getColumnFieldName(), c.getCellDataTypeName(), index,
+							columnSet.getIndexedFieldUpdaterClassName());
+				} else if (!c.hasCustomFieldUpdater()) {
 					sw.println("%1$s.setFieldUpdater(new FieldUpdater<%2$s,%3$s>() {", c.getColumnFieldName(), columnSet.getBeanName(), c.getCellDataTypeName());
 					sw.indent();
 
 					sw.println("public void update(int index, %1$s object, %2$s value) {", columnSet.getBeanName(), c.getCellDataTypeName());
 					sw.indent();
-					sw.println("%1$s;", c.getSetterInModel("object", "value"));
+					writeUpdate(sw, instrument, toGenerate, columnSet, c, String.format("%1$s;", c.getSetterInModel("object", "value")));
 					sw.outdent();
 					sw.println("}");
 
 					sw.outdent();// end anon FieldUpdater class
 					sw.println("});");
+				} else if (instrument) {
+					// wrap the provided updater so its time is recorded too
+					sw.println("%1$s.setFieldUpdater(new FieldUpdater<%2$s,%3$s>() {", c.getColumnFieldName(), columnSet.getBeanName(), c.getCellDataTypeName());
+					sw.indent();
+					sw.println("private final %1$s delegate = GWT.create(%1$s.class);", c.getFieldUpdaterType().getQualifiedSourceName());
+					sw.println("public void update(int index, %1$s object, %2$s value) {", columnSet.getBeanName(), c.getCellDataTypeName());
+					sw.indent();
+					writeTimed(sw, instrument, toGenerate, c, "UPDATE", "delegate.update(index, object, value);");
+					sw.outdent();
+					sw.println("}");
+					sw.outdent();
+					sw.println("});");
 				} else {
 					sw.println("%1$s.setFieldUpdater(GWT.<%2$s>create(%2$s.class));", c.getColumnFieldName(), c.getFieldUpdaterType().getQualifiedSourceName());
 				}
 			}
-			sw.println("%1$s.setHorizontalAlignment(%2$s);", c.getColumnFieldName(), c.getHorizontalAlignment());
-			sw.println("%1$s.setVerticalAlignment(%2$s);", c.getColumnFieldName(), c.getVerticalAlignment());
+			if (!compact) {
+				sw.println("%1$s.setHorizontalAlignment(%2$s);", c.getColumnFieldName(), c.getHorizontalAlignment());
+				sw.println("%1$s.setVerticalAlignment(%2$s);", c.getColumnFieldName(), c.getVerticalAlignment());
+			}
 
-			if (supportsSortable()) {
+			if (!compact || c.isSortable()) {
 				sw.println("%1$s.setSortable(%2$s);", c.getColumnFieldName(), c.isSortable());
-			} else {
-				if (c.isSortable()) {
-					logger.log(Type.WARN, "Your version of GWT does not appear to support Column.setSortable, compilation may fail.");
-				}
 			}
 			//end column creation/setup
 
 			sw.outdent();
 			sw.println("}");// end column/cell creation
-			sw.println("return %s;", c.getCellFieldName());
-			sw.outdent();
-			sw.println("}");
+			if (!sharedColumn) {
+				sw.println("return %s;", c.getCellFieldName());
+				sw.outdent();
+				sw.println("}");
+			}
+		}
+
+		if (compact) {
+			writeCompactDispatch(sw, toGenerate, columnSet, tableBuilder, instrument);
 		}
+		phaseStart = endPhase("columns", phaseStart);
 
 		// generate configure methods
 
-		// simple overload
-		sw.println("public final void configure(CellTable<%1$s> table) {", columnSet.getBeanName());
+		// simple overloads
+		sw.println("public final void configure(AbstractCellTable<%1$s> table) {", columnSet.getBeanName());
 		sw.indent();
-		sw.println("configure(table, null);");
+		sw.println("configure(table, null, null);");
+		sw.outdent();
+		sw.println("}");
+
+		sw.println("public final void configure(AbstractCellTable<%1$s> table, HasDataFlushableEditor<%1$s> ed) {", columnSet.getBeanName());
+		sw.indent();
+		sw.println("configure(table, ed, null);");
 		sw.outdent();
 		sw.println("}");
 
 		// actual heavy-lifting one
-		sw.println("public final void configure(CellTable<%1$s> table, HasDataFlushableEditor<%1$s> ed) {", columnSet.getBeanName());
+		sw.println("public final void configure(AbstractCellTable<%1$s> table, HasDataFlushableEditor<%1$s> ed, ListHandler<%1$s> sortHandler) {", columnSet.getBeanName());
 		sw.indent();
 		if (columnSet.hasFactory()) {
 			sw.println("assert factory != null : \"setFactory() must be called before configure() can be called.\";");
 		}
+		sw.println("if (ed != null) {");
+		sw.indent();
+		// let the editor skip redrawing rows for properties no column reads
+		sw.println("ed.addPaths(getPaths());");
+		for (ColumnModel c : columnSet.getColumnModels()) {
+			if (c.getPath().length() == 0) {
+				sw.println("ed.addPaths(\"\");");
+				break;
+			}
+		}
+		sw.outdent();
+		sw.println("}");
+		if (columnSet.getKeyProviderFieldName() != null) {
+			sw.println("assert table.getKeyProvider() != null : \"Create the table with getKeyProvider(), so rows are identified by their @Key\";");
+		}
 		for (ColumnModel c : columnSet.getColumnModels()) {
 			//wire up the cell and column
 			sw.println("%1$s();", c.getMethodName());
 
-			if (c.isEditable() && !c.hasCustomFieldUpdater()) {
+			if (c.isEditable() && !c.hasCustomFieldUpdater() && compact) {
+				sw.println("if (ed != null) {");
+				sw.indentln("%3$s(ed, %1$s, %2$s);", c.getColumnFieldName(), c.getQuotedPath(), columnSet.getWrapForEditorMethodName());
+				sw.println("}");
+			} else if (c.isEditable() && !c.hasCustomFieldUpdater()) {
 				// if there is an editor, replace the FieldUpdater
 				sw.println("if (ed != null) {");
 				sw.indent();
 				sw.println("final FieldUpdater<%1$s, %2$s> wrapped = %3$s.getFieldUpdater();", columnSet.getBeanName() , c.getCellDataTypeName() ,c.getColumnFieldName());
-				sw.println("%1$s.setFieldUpdater(ed.new PendingFieldUpdateChange<%2$s>(){", c.getColumnFieldName(), c.getCellDataTypeName());
+				sw.println("%1$s.setFieldUpdater(ed.new PendingFieldUpdateChange<%2$s>(%3$s){", c.getColumnFieldName(), c.getCellDataTypeName(), c.getQuotedPath());
 				sw.indent();
 				sw.println("public void commit(int index, %1$s object, %2$s value) {", columnSet.getBeanName(), c.getCellDataTypeName());
 				sw.indent();
 				sw.println("wrapped.update(index, object, value);");
 				sw.outdent();
 				sw.println("}");
+				sw.println("@Override");
+				sw.println("protected %1$s getCurrentValue(%2$s object) {", c.getCellDataTypeName(), columnSet.getBeanName());
+				sw.indentln("return %1$s.getValue(object);", c.getColumnFieldName());
+				sw.println("}");
 				sw.outdent();
 				sw.println("});");
 				sw.outdent();
 				sw.println("}");
 			}
 
+			if (c.isSortable() && c.isModelTypeComparable()) {
+				sw.println("if (sortHandler != null) {");
+				sw.indent();
+				sw.println("sortHandler.setComparator(%1$s, %2$s);", c.getColumnFieldName(), c.getComparatorFieldName());
+				if (c.getSortKeyType() != null) {
+					sw.println("if (sortHandler instanceof KeyedListHandler) {");
+					sw.indent();
+					sw.println("((KeyedListHandler<%1$s>) sortHandler).set%2$sKey(%3$s, %4$s);", columnSet.getBeanName(),
+							c.getSortKeyType() == SortKeyType.NUMBER ? "Number" : "String", c.getColumnFieldName(), c.getSortKeyFieldName());
+					sw.outdent();
+					sw.println("}");
+				}
+				sw.outdent();
+				sw.println("}");
+			}
+
 			// attach the column
-			sw.println("table.addColumn(%1$s, %2$s);", c.getColumnFieldName(), c.getHeaderValue());
+			if (c.getAggregateFunction() != null) {
+				sw.println("table.addColumn(%1$s, new TextHeader(%2$s), %3$s);", c.getColumnFieldName(), c.getHeaderValue(), c.getAggregateFieldName());
+				sw.println("%1$s.addTable(table);", c.getAggregateFieldName());
+			} else {
+				sw.println("table.addColumn(%1$s, %2$s);", c.getColumnFieldName(), c.getHeaderValue());
+			}
 		}
+		sw.println("if (sortHandler != null) {");
+		sw.indent();
+		sw.println("table.addColumnSortHandler(sortHandler);");
 		sw.outdent();
 		sw.println("}");
+		if (tableBuilder) {
+			sw.println("table.setTableBuilder(new %1$s(table));", columnSet.getTableBuilderClassName());
+		}
+		sw.outdent();
+		sw.println("}");
+
+		phaseStart = endPhase("configure", phaseStart);
+
+		if (tableBuilder) {
+			writeTableBuilder(sw, columnSet);
+		}
+		phaseStart = endPhase("tableBuilder", phaseStart);
+
+		writeExport(sw, columnSet, compact);
+		writeFilter(sw, columnSet, compact);
 
 		sw.println("public String[] getPaths() {");
 		sw.indent();
@@ -222,14 +517,593 @@ public class ColumnsGenerator extends Generator {
 		sw.println("}");
 
 		sw.commit(logger);
+		endPhase("other", phaseStart);
+
+		RebindResult result = new RebindResult(RebindMode.USE_ALL_NEW, factory.getCreatedClassName());
+		result.putClientData(DEPENDENCIES_KEY, new ArrayList<String>(columnSet.getDependencies()));
+		result.putClientData(INSTRUMENT_KEY, instrument);
+		result.putClientData(COMPACT_KEY, compact);
+		return result;
+	}
+
+	private long startPhase() {
+		return phaseTimes == null ? 0 : System.nanoTime();
+	}
+
+	/**
+	 * Adds the time since the phase started to its total, if phases are being timed.
+	 * @return the start of the next phase
+	 */
+	private long endPhase(String phase, long start) {
+		if (phaseTimes == null) {
+			return 0;
+		}
+		long now = System.nanoTime();
+		Long total = phaseTimes.get(phase);
+		phaseTimes.put(phase, (total == null ? 0 : total) + now - start);
+		return now;
+	}
+
+	/**
+	 * Writes the getKeyProvider method, and if there is a @Key, a static ProvidesKey which reads it.
+	 */
+	private void writeKeyProvider(SourceWriter sw, ColumnSetModel columnSet) {
+		String bean = columnSet.getBeanName();
+		if (columnSet.getKeyProviderFieldName() != null) {
+			sw.println("private static final ProvidesKey<%1$s> %2$s = new ProvidesKey<%1$s>() {", bean, columnSet.getKeyProviderFieldName());
+			sw.indent();
+			sw.println("public Object getKey(%1$s item) {", bean);
+			sw.indentln("return item == null ? null : %1$s;", columnSet.getKeyExpression("item"));
+			sw.println("}");
+			sw.outdent();
+			sw.println("};");
+		}
+		sw.println("public ProvidesKey<%1$s> getKeyProvider() {", bean);
+		sw.indentln("return %1$s;", columnSet.getKeyProviderFieldName());
+		sw.println("}");
+	}
+
+	/**
+	 * Writes a ColumnAggregate footer for each aggregated column, and the setAggregateRows method.
+	 */
+	private void writeAggregates(SourceWriter sw, ColumnSetModel columnSet) {
+		String bean = columnSet.getBeanName();
+		for (ColumnModel c : columnSet.getColumnModels()) {
+			if (c.getAggregateFunction() == null) {
+				continue;
+			}
+			sw.println("private final ColumnAggregate<%1$s> %2$s = new ColumnAggregate<%1$s>(%3$s.%4$s) {", bean,
+					c.getAggregateFieldName(), Name.getSourceNameForClass(Aggregate.Function.class), c.getAggregateFunction());
+			sw.indent();
+			sw.println("public double readValue(%1$s row) {", bean);
+			sw.indent();
+			sw.println("%1$s value = %2$s;", c.getModelType().getParameterizedQualifiedSourceName(), c.getGetterInModelWithoutDataConverter("row"));
+			sw.println("return %1$s;", c.getAggregateValueExpression("value"));
+			sw.outdent();
+			sw.println("}");
+			sw.outdent();
+			sw.println("};");
+		}
+		sw.println("public void setAggregateRows(java.util.List<%1$s> rows) {", bean);
+		sw.indent();
+		for (ColumnModel c : columnSet.getColumnModels()) {
+			if (c.getAggregateFunction() != null) {
+				sw.println("%1$s.setRows(rows);", c.getAggregateFieldName());
+			}
+		}
+		sw.outdent();
+		sw.println("}");
+	}
+
+	/**
+	 * Writes the createGrouping method, and if there is a @GroupBy column, the groupings created
+	 * and not yet disposed, so rows can be regrouped when the column's property is set.
+	 */
+	private void writeGrouping(SourceWriter sw, ColumnSetModel columnSet) {
+		String bean = columnSet.getBeanName();
+		ColumnModel groupBy = getGroupByColumn(columnSet);
+		if (groupBy != null) {
+			sw.println("private final java.util.List<ColumnGrouping<%1$s>> %2$s = new java.util.ArrayList<ColumnGrouping<%1$s>>();", bean, columnSet.getGroupingsFieldName());
+		}
+		sw.println("public ColumnGrouping<%1$s> createGrouping(ListDataProvider<%1$s> provider) {", bean);
+		sw.indent();
+		if (groupBy == null) {
+			sw.println("return null;");
+		} else {
+			sw.println("ColumnGrouping<%1$s> grouping = new ColumnGrouping<%1$s>(provider) {", bean);
+			sw.indent();
+			sw.println("@Override");
+			sw.println("protected Object getGroupKey(%1$s row) {", bean);
+			sw.indentln("return %1$s;", groupBy.getGetterInModelWithoutDataConverter("row"));
+			sw.println("}");
+			sw.println("@Override");
+			sw.println("public void dispose() {");
+			sw.indent();
+			sw.println("super.dispose();");
+			sw.println("%1$s.remove(this);", columnSet.getGroupingsFieldName());
+			sw.outdent();
+			sw.println("}");
+			sw.outdent();
+			sw.println("};");
+			sw.println("%1$s.add(grouping);", columnSet.getGroupingsFieldName());
+			sw.println("return grouping;");
+		}
+		sw.outdent();
+		sw.println("}");
+	}
+
+	private ColumnModel getGroupByColumn(ColumnSetModel columnSet) {
+		for (ColumnModel c : columnSet.getColumnModels()) {
+			if (c.isGroupBy()) {
+				return c;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Writes the statement that sets a column's value on the model. The old value of each
+	 * aggregate reading that property is read first, so the aggregates can be updated without
+	 * reading the other rows, and if the property is grouped by, the row is regrouped after.
+	 */
+	private void writeUpdate(SourceWriter sw, boolean instrument, JClassType toGenerate, ColumnSetModel columnSet, ColumnModel c, String statement) {
+		List<ColumnModel> aggregates = new ArrayList<ColumnModel>();
+		for (ColumnModel a : columnSet.getColumnModels()) {
+			if (a.getAggregateFunction() != null && a.isAffectedBy(c)) {
+				aggregates.add(a);
+			}
+		}
+		for (int i = 0; i < aggregates.size(); i++) {
+			sw.println("double oldValue%1$d = %2$s.readValue(object);", i, aggregates.get(i).getAggregateFieldName());
+		}
+		writeTimed(sw, instrument, toGenerate, c, "UPDATE", statement);
+		for (int i = 0; i < aggregates.size(); i++) {
+			sw.println("%2$s.replace(oldValue%1$d, %2$s.readValue(object));", i, aggregates.get(i).getAggregateFieldName());
+		}
+		ColumnModel groupBy = getGroupByColumn(columnSet);
+		if (groupBy != null && groupBy.isAffectedBy(c)) {
+			sw.println("for (ColumnGrouping<%1$s> grouping : %2$s) {", columnSet.getBeanName(), columnSet.getGroupingsFieldName());
+			sw.indentln("grouping.update(object);");
+			sw.println("}");
+		}
+	}
+
+	/**
+	 * Writes the export method, with a CsvExport subclass that writes the same headers configure()
+	 * uses, and reads each value as the column does.
+	 */
+	private void writeExport(SourceWriter sw, ColumnSetModel columnSet, boolean compact) {
+		String bean = columnSet.getBeanName();
+		List<ColumnModel> columns = columnSet.getColumnModels();
+		sw.println("public void export(java.util.List<%1$s> rows, Appendable out, CsvExport.Callback callback) {", bean);
+		sw.indent();
+		sw.println("new CsvExport<%1$s>(rows, out, callback) {", bean);
+		sw.indent();
+
+		sw.println("@Override");
+		sw.println("protected void writeHeader(StringBuilder buffer) {");
+		sw.indent();
+		for (int index = 0; index < columns.size(); index++) {
+			sw.println("appendValue(buffer, %1$s, %2$s);", columns.get(index).getHeaderValue(), index == 0);
+		}
+		sw.outdent();
+		sw.println("}");
+
+		sw.println("@Override");
+		sw.println("protected void writeRow(%1$s row, StringBuilder buffer) {", bean);
+		sw.indent();
+		if (compact) {
+			// read through the same switch as the columns, rather than adding another copy of each path
+			sw.println("for (int index = 0; index < %1$d; index++) {", columns.size());
+			sw.indentln("appendValue(buffer, %1$s(index, row), index == 0);", columnSet.getValueAtMethodName());
+			sw.println("}");
+		} else {
+			for (int index = 0; index < columns.size(); index++) {
+				sw.println("appendValue(buffer, %1$s, %2$s);", columns.get(index).getGetterInModel("row"), index == 0);
+			}
+		}
+		sw.outdent();
+		sw.println("}");
+
+		sw.outdent();
+		sw.println("}.start();");
+		sw.outdent();
+		sw.println("}");
+	}
+
+	/**
+	 * Writes the createFilter method, with a ColumnFilter subclass that builds the key of each row
+	 * from the filterable columns, read as the columns read them.
+	 */
+	private void writeFilter(SourceWriter sw, ColumnSetModel columnSet, boolean compact) {
+		String bean = columnSet.getBeanName();
+		List<ColumnModel> columns = columnSet.getColumnModels();
+		sw.println("public ColumnFilter<%1$s> createFilter(ListDataProvider<%1$s> provider) {", bean);
+		sw.indent();
+		sw.println("return new ColumnFilter<%1$s>(provider) {", bean);
+		sw.indent();
+
+		sw.println("@Override");
+		sw.println("protected void writeKey(%1$s row, StringBuilder buffer) {", bean);
+		sw.indent();
+		for (int index = 0; index < columns.size(); index++) {
+			ColumnModel c = columns.get(index);
+			if (c.isFilterable()) {
+				sw.println("appendKey(buffer, %1$s);", compact ? columnSet.getValueAtMethodName() + "(" + index + ", row)" : c.getGetterInModel("row"));
+			}
+		}
+		sw.outdent();
+		sw.println("}");
+
+		sw.outdent();
+		sw.println("};");
+		sw.outdent();
+		sw.println("}");
+	}
+
+	/**
+	 * Writes an anonymous Column subclass for the given column, which reads the value directly.
+	 */
+	private void writeColumn(SourceWriter sw, JClassType toGenerate, ColumnSetModel columnSet, ColumnModel c, boolean tableBuilder, boolean instrument) {
+		sw.println("%1$s = new Column<%2$s,%3$s> (%4$s) {", c.getColumnFieldName(), columnSet.getBeanName(), c.getCellDataTypeName(), c.getCellFieldName());
+		sw.indent();
+
+		sw.println("@Override");
+		sw.println("public %1$s getValue(%2$s bean) {", c.getCellDataTypeName(), columnSet.getBeanName());
+		sw.indent();
+		if (tableBuilder && c.isProjected()) {
+			// the value was already read if this row is being built
+			sw.println("if (bean != null && bean == %1$s) {", columnSet.getProjectedRowFieldName());
+			sw.indentln("return %1$s;", c.getProjectedValueFieldName());
+			sw.println("}");
+		}
+		if (instrument) {
+			writeInstrumentedGetValue(sw, toGenerate, c);
+		} else {
+			sw.println("return %1$s;", c.getGetterInModel("bean"));
+		}
+		sw.outdent();
+		sw.println("}");
+
+		sw.outdent();// end anon Column class
+		sw.println("};");
+	}
+
+	/**
+	 * Writes the types and methods shared by all columns in compact mode - one Column type and one
+	 * FieldUpdater type, which call into a switch on the index of the column to read or write the
+	 * value. This trades a little speed in each call for much less code than a class per column.
+	 */
+	private void writeCompactDispatch(SourceWriter sw, JClassType toGenerate, ColumnSetModel columnSet, boolean tableBuilder, boolean instrument) {
+		String bean = columnSet.getBeanName();
+		List<ColumnModel> columns = columnSet.getColumnModels();
+		boolean editable = false;
+		for (ColumnModel c : columns) {
+			editable |= c.isEditable() && !c.hasCustomFieldUpdater();
+		}
+
+		sw.println("private class %2$s<C> extends Column<%1$s, C> {", bean, columnSet.getIndexedColumnClassName());
+		sw.indent();
+		sw.println("private final int index;");
+		sw.println("public %1$s(int index, Cell<C> cell) {", columnSet.getIndexedColumnClassName());
+		sw.indent();
+		sw.println("super(cell);");
+		sw.println("this.index = index;");
+		sw.outdent();
+		sw.println("}");
+		sw.println("@Override");
+		sw.println("@SuppressWarnings(\"unchecked\")");
+		sw.println("public C getValue(%1$s bean) {", bean);
+		sw.indent();
+		if (tableBuilder) {
+			sw.println("if (bean != null && bean == %1$s) {", columnSet.getProjectedRowFieldName());
+			sw.indentln("return (C) %1$s(index, bean);", columnSet.getProjectedValueAtMethodName());
+			sw.println("}");
+		}
+		sw.println("return (C) %1$s(index, bean);", columnSet.getValueAtMethodName());
+		sw.outdent();
+		sw.println("}");
+		sw.outdent();
+		sw.println("}");
+
+		sw.println("private <C> Column<%1$s, C> %2$s(int index, Cell<C> cell, HasHorizontalAlignment.HorizontalAlignmentConstant horizontal, HasVerticalAlignment.VerticalAlignmentConstant vertical) {",
+				bean, columnSet.getCreateColumnMethodName());
+		sw.indent();
+		sw.println("Column<%1$s, C> column = new %2$s<C>(index, cell);", bean, columnSet.getIndexedColumnClassName());
+		sw.println("column.setHorizontalAlignment(horizontal);");
+		sw.println("column.setVerticalAlignment(vertical);");
+		sw.println("return column;");
+		sw.outdent();
+		sw.println("}");
+
+		sw.println("private Object %2$s(int index, %1$s bean) {", bean, columnSet.getValueAtMethodName());
+		sw.indent();
+		sw.println("switch (index) {");
+		for (int index = 0; index < columns.size(); index++) {
+			ColumnModel c = columns.get(index);
+			sw.println("case %1$d: {", index);
+			sw.indent();
+			if (instrument) {
+				writeInstrumentedGetValue(sw, toGenerate, c);
+			} else {
+				sw.println("return %1$s;", c.getGetterInModel("bean"));
+			}
+			sw.outdent();
+			sw.println("}");
+		}
+		sw.println("}");
+		sw.println("return null;");
+		sw.outdent();
+		sw.println("}");
+
+		if (tableBuilder) {
+			sw.println("private Object %2$s(int index, %1$s bean) {", columnSet.getBeanName(), columnSet.getProjectedValueAtMethodName());
+			sw.indent();
+			sw.println("switch (index) {");
+			for (int index = 0; index < columns.size(); index++) {
+				if (columns.get(index).isProjected()) {
+					sw.println("case %1$d:", index);
+					sw.indentln("return %1$s;", columns.get(index).getProjectedValueFieldName());
+				}
+			}
+			sw.println("}");
+			sw.println("return %1$s(index, bean);", columnSet.getValueAtMethodName());
+			sw.outdent();
+			sw.println("}");
+		}
+
+		if (!editable) {
+			return;
+		}
+		sw.println("private class %2$s<C> implements FieldUpdater<%1$s, C> {", bean, columnSet.getIndexedFieldUpdaterClassName());
+		sw.indent();
+		sw.println("private final int index;");
+		sw.println("public %1$s(int index) {", columnSet.getIndexedFieldUpdaterClassName());
+		sw.indentln("this.index = index;");
+		sw.println("}");
+		sw.println("public void update(int row, %1$s object, C value) {", bean);
+		sw.indentln("%1$s(index, object, value);", columnSet.getSetValueAtMethodName());
+		sw.println("}");
+		sw.outdent();
+		sw.println("}");
+
+		sw.println("private void %2$s(int index, %1$s object, Object value) {", bean, columnSet.getSetValueAtMethodName());
+		sw.indent();
+		sw.println("switch (index) {");
+		for (int index = 0; index < columns.size(); index++) {
+			ColumnModel c = columns.get(index);
+			if (!c.isEditable() || c.hasCustomFieldUpdater()) {
+				continue;
+			}
+			sw.println("case %1$d: {", index);
+			sw.indent();
+			String value = String.format("((%1$s) value)", c.getCellDataTypeName());
+			writeUpdate(sw, instrument, toGenerate, columnSet, c, String.format("%1$s;", c.getSetterInModel("object", value)));
+			sw.println("return;");
+			sw.outdent();
+			sw.println("}");
+		}
+		sw.println("}");
+		sw.outdent();
+		sw.println("}");
+
+		sw.println("private <C> void %2$s(HasDataFlushableEditor<%1$s> ed, final Column<%1$s, C> column, String path) {", bean, columnSet.getWrapForEditorMethodName());
+		sw.indent();
+		sw.println("final FieldUpdater<%1$s, C> wrapped = column.getFieldUpdater();", bean);
+		sw.println("column.setFieldUpdater(ed.new PendingFieldUpdateChange<C>(path) {");
+		sw.indent();
+		sw.println("public void commit(int index, %1$s object, C value) {", bean);
+		sw.indentln("wrapped.update(index, object, value);");
+		sw.println("}");
+		sw.println("@Override");
+		sw.println("protected C getCurrentValue(%1$s object) {", bean);
+		sw.indentln("return column.getValue(object);");
+		sw.println("}");
+		sw.outdent();
+		sw.println("});");
+		sw.outdent();
+		sw.println("}");
+	}
+
+	/**
+	 * Writes the body of an instrumented Column.getValue, timing the whole call, and separately
+	 * the DataConverter, if any.
+	 */
+	private void writeInstrumentedGetValue(SourceWriter sw, JClassType toGenerate, ColumnModel c) {
+		sw.println("double start = ColumnsMetrics.start();");
+		sw.println("try {");
+		sw.indent();
+		if (c.hasConverter()) {
+			sw.println("%1$s value = %2$s;", c.getModelType().getParameterizedQualifiedSourceName(), c.getGetterInModelWithoutDataConverter("bean"));
+			writeTimed(sw, true, toGenerate, c, "CONVERT", String.format("return %1$s;", c.getCellValue("value")));
+		} else {
+			sw.println("return %1$s;", c.getGetterInModel("bean"));
+		}
+		sw.outdent();
+		sw.println("} finally {");
+		sw.indentln("ColumnsMetrics.record(%1$s, ColumnsMetrics.Operation.GET_VALUE, start);", getMetricName(toGenerate, c));
+		sw.println("}");
+	}
+
+	/**
+	 * Writes the given statement, reporting how long it took to ColumnsMetrics if instrumenting.
+	 */
+	private void writeTimed(SourceWriter sw, boolean instrument, JClassType toGenerate, ColumnModel c, String operation, String statement) {
+		if (!instrument) {
+			sw.println(statement);
+			return;
+		}
+		String start = operation.toLowerCase() + "Start";
+		sw.println("double %1$s = ColumnsMetrics.start();", start);
+		sw.println("try {");
+		sw.indentln(statement);
+		sw.println("} finally {");
+		sw.indentln("ColumnsMetrics.record(%1$s, ColumnsMetrics.Operation.%2$s, %3$s);", getMetricName(toGenerate, c), operation, start);
+		sw.println("}");
+	}
+
+	/**
+	 * @return the quoted name the given column reports to ColumnsMetrics with
+	 */
+	private String getMetricName(JClassType toGenerate, ColumnModel c) {
+		return "\"" + Generator.escape(toGenerate.getQualifiedSourceName() + "." + c.getMethodName()) + "\"";
+	}
+
+	/**
+	 * Reads one of the true/false deferred binding properties that change how columns are generated.
+	 * Modules that don't define the property get false.
+	 */
+	private boolean getBooleanProperty(TreeLogger logger, String name) {
+		try {
+			SelectionProperty property = context.getPropertyOracle().getSelectionProperty(logger, name);
+			return Boolean.valueOf(property.getCurrentValue());
+		} catch (BadPropertyValueException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Writes a Comparator for the given sortable column, reading the model data directly so that
+	 * primitives need not be boxed.
+	 */
+	private void writeComparator(TreeLogger logger, SourceWriter sw, ColumnSetModel columnSet, ColumnModel c) {
+		if (!c.isModelTypeComparable()) {
+			logger.log(Type.WARN, "Cannot sort " + c.getMethodName() + ", as " + c.getModelType().getQualifiedSourceName()
+					+ " is not Comparable - a Comparator must be provided to the ListHandler manually.");
+			return;
+		}
+		String modelType = c.getModelType().getParameterizedQualifiedSourceName();
+		sw.println("private static final Comparator<%1$s> %2$s = new Comparator<%1$s>() {", columnSet.getBeanName(), c.getComparatorFieldName());
+		sw.indent();
+		sw.println("public int compare(%1$s o1, %1$s o2) {", columnSet.getBeanName());
+		sw.indent();
+		sw.println("%1$s a = %2$s;", modelType, c.getGetterInModelWithoutDataConverter("o1"));
+		sw.println("%1$s b = %2$s;", modelType, c.getGetterInModelWithoutDataConverter("o2"));
+		sw.println("return %1$s;", c.getCompareExpression("a", "b"));
+		sw.outdent();
+		sw.println("}");
+		sw.outdent();
+		sw.println("};");
+	}
+
+	/**
+	 * Writes the key a KeyedListHandler can sort the given sortable column by, if the data is of a
+	 * type that can be used as a key.
+	 */
+	private void writeSortKey(SourceWriter sw, ColumnSetModel columnSet, ColumnModel c) {
+		if (c.getSortKeyType() == null) {
+			return;
+		}
+		boolean number = c.getSortKeyType() == SortKeyType.NUMBER;
+		sw.println("private static final KeyedListHandler.%1$sKey<%2$s> %3$s = new KeyedListHandler.%1$sKey<%2$s>() {",
+				number ? "Number" : "String", columnSet.getBeanName(), c.getSortKeyFieldName());
+		sw.indent();
+		sw.println("public %1$s getKey(%2$s row) {", number ? "double" : "String", columnSet.getBeanName());
+		sw.indent();
+		sw.println("%1$s value = %2$s;", c.getModelType().getParameterizedQualifiedSourceName(), c.getGetterInModelWithoutDataConverter("row"));
+		sw.println("return %1$s;", c.getSortKeyExpression("value"));
+		sw.outdent();
+		sw.println("}");
+		sw.outdent();
+		sw.println("};");
+	}
+
+	/**
+	 * Writes a CellTableBuilder that reads all column values from each row before it is built, then
+	 * builds the row as the default builder would. While the row is being built, each Column
+	 * returns the value already read instead of following its path again. Only properties shared by
+	 * several paths are projected, and each is only read once - other columns read their own path.
+	 */
+	private void writeTableBuilder(SourceWriter sw, ColumnSetModel columnSet) {
+		sw.println("private class %2$s extends DefaultCellTableBuilder<%1$s> {", columnSet.getBeanName(), columnSet.getTableBuilderClassName());
+		sw.indent();
+		sw.println("public %2$s(AbstractCellTable<%1$s> table) {", columnSet.getBeanName(), columnSet.getTableBuilderClassName());
+		sw.indentln("super(table);");
+		sw.println("}");
+
+		sw.println("@Override");
+		sw.println("public void buildRowImpl(%1$s row, int absRowIndex) {", columnSet.getBeanName());
+		sw.indent();
+		sw.println("if (row != null) {");
+		sw.indent();
+		writePathNode(sw, columnSet.getPathTree(), "row", new int[] {0});
+		sw.println("%1$s = row;", columnSet.getProjectedRowFieldName());
+		sw.outdent();
+		sw.println("}");
+		sw.println("try {");
+		sw.indentln("super.buildRowImpl(row, absRowIndex);");
+		sw.println("} finally {");
+		sw.indentln("%1$s = null;", columnSet.getProjectedRowFieldName());
+		sw.println("}");
+		sw.outdent();
+		sw.println("}");
 
-		return factory.getCreatedClassName();
+		sw.outdent();
+		sw.println("}");
 	}
 
 	/**
-	 * @return
+	 * Reads each property in the tree into a local, assigning the value of each column that ends
+	 * at that property, then moves on to the properties read from it.
+	 * @param counter used to name the locals uniquely
 	 */
-	private boolean supportsSortable() {
-		return context.getTypeOracle().findType(Name.getSourceNameForClass(Column.class)).findMethod("setSortable", new JType[] {JPrimitiveType.BOOLEAN}) != null;
+	private void writePathNode(SourceWriter sw, PathNode node, String value, int[] counter) {
+		if (node.isProjected()) {
+			for (ColumnModel c : node.getColumns()) {
+				sw.println("%1$s = %2$s;", c.getProjectedValueFieldName(), c.getCellValue(value));
+			}
+		}
+		for (PathNode child : node.getChildren()) {
+			if (!child.isProjected()) {
+				continue;
+			}
+			String childValue = "path" + counter[0]++;
+			sw.println("%1$s %2$s = %3$s;", child.getTypeName(), childValue, child.getGetterExpression(value));
+			writePathNode(sw, child, childValue, counter);
+		}
+	}
+
+	/**
+	 * Checks if the type generated in a previous compile is still valid - only possible if none
+	 * of the types it was built from have been changed since then.
+	 * @param logger
+	 * @param qualifiedName
+	 * @param instrument whether the type to generate now should be instrumented
+	 * @param compact whether the type to generate now should be compact
+	 * @return true if the cached type can be used as is
+	 */
+	private boolean canReuseCachedResult(TreeLogger logger, String qualifiedName, boolean instrument, boolean compact) {
+		CachedGeneratorResult cached = context.getCachedGeneratorResult();
+		if (!context.isGeneratorResultCachingEnabled() || cached == null) {
+			return false;
+		}
+		if (!Boolean.valueOf(instrument).equals(cached.getClientData(INSTRUMENT_KEY))
+				|| !Boolean.valueOf(compact).equals(cached.getClientData(COMPACT_KEY))) {
+			return false;
+		}
+		@SuppressWarnings("unchecked")
+		List<String> dependencies = (List<String>) cached.getClientData(DEPENDENCIES_KEY);
+		if (dependencies == null) {
+			return false;
+		}
+		TypeOracle oracle = context.getTypeOracle();
+		for (String dependency : dependencies) {
+			JClassType type = oracle.findType(dependency);
+			if (!(type instanceof JRealClassType) || ((JRealClassType) type).getLastModifiedTime() > cached.getTimeGenerated()) {
+				logger.log(Type.DEBUG, "Regenerating " + qualifiedName + ", " + dependency + " has changed");
+				return false;
+			}
+		}
+		return context.tryReuseTypeFromCache(qualifiedName);
+	}
+
+	/**
+	 * @return true if CellTableBuilder and DefaultCellTableBuilder are available (GWT 2.5+)
+	 */
+	private boolean supportsTableBuilder() {
+		if (tableBuilderSupported == null) {
+			tableBuilderSupported = context.getTypeOracle().findType(Name.getSourceNameForClass(DefaultCellTableBuilder.class)) != null;
+		}
+		return tableBuilderSupported;
 	}
 }
@@ -17,21 +17,36 @@
 package com.colinalworth.celltable.columns.rebind.model;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
 
 import com.colinalworth.celltable.columns.client.Columns;
+import com.colinalworth.celltable.columns.client.Columns.Aggregate;
 import com.colinalworth.celltable.columns.client.Columns.Alignment;
 import com.colinalworth.celltable.columns.client.Columns.ConvertedWith;
 import com.colinalworth.celltable.columns.client.Columns.Editable;
+import com.colinalworth.celltable.columns.client.Columns.Filterable;
+import com.colinalworth.celltable.columns.client.Columns.Format;
+import com.colinalworth.celltable.columns.client.Columns.GeneratedTableBuilder;
+import com.colinalworth.celltable.columns.client.Columns.GroupBy;
 import com.colinalworth.celltable.columns.client.Columns.Header;
+import com.colinalworth.celltable.columns.client.Columns.Key;
+import com.colinalworth.celltable.columns.client.Columns.Shared;
 import com.colinalworth.celltable.columns.client.Columns.Sortable;
 import com.colinalworth.celltable.columns.client.Columns.Translations;
 import com.colinalworth.celltable.columns.client.ColumnsWithFactory;
+import com.colinalworth.celltable.columns.client.DoubleDataConverter;
+import com.colinalworth.celltable.columns.client.IntDataConverter;
+import com.google.gwt.cell.client.AbstractEditableCell;
 import com.google.gwt.cell.client.Cell;
 import com.google.gwt.cell.client.FieldUpdater;
 import com.google.gwt.core.ext.Generator;
@@ -39,6 +54,7 @@ import com.google.gwt.core.ext.GeneratorContext;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.core.ext.typeinfo.JClassType;
 import com.google.gwt.core.ext.typeinfo.JMethod;
+import com.google.gwt.core.ext.typeinfo.JPrimitiveType;
 import com.google.gwt.core.ext.typeinfo.JType;
 import com.google.gwt.dev.util.Name;
 import com.google.gwt.editor.client.Editor.Path;
@@ -56,7 +72,27 @@ public class ColumnSetModel {
 	private final Set<String> names;
 
 	private final JClassType factoryType;
+	private final JClassType cellInterface;
+	private final JClassType fieldUpdaterInterface;
 	private final List<ColumnModel> columns;
+	private final String projectedRowFieldName;
+	private Set<ColumnModel> projectedColumns;
+	private final boolean shared;
+
+	private final Set<String> dependencies = new TreeSet<String>();
+	private final List<String> keyPaths = new ArrayList<String>();
+	private final String keyProviderFieldName;
+
+	// helpers the generator may emit, named after the columns so a column can't hide them
+	private final String groupingsFieldName;
+	private final String indexedColumnClassName;
+	private final String indexedFieldUpdaterClassName;
+	private final String createColumnMethodName;
+	private final String valueAtMethodName;
+	private final String projectedValueAtMethodName;
+	private final String setValueAtMethodName;
+	private final String wrapForEditorMethodName;
+	private final String tableBuilderClassName;
 
 	public ColumnSetModel(JClassType toGenerate, GeneratorContext context, TreeLogger logger, Set<String> names) {
 		this.logger = logger;
@@ -65,11 +101,46 @@ public class ColumnSetModel {
 
 		this.beanType = getBeanType(toGenerate);
 		this.factoryType = getFactoryType(toGenerate);
+		if (factoryType != null) {
+			names.add("factory");
+		}
+		this.cellInterface = context.getTypeOracle().findType(Name.getSourceNameForClass(Cell.class));
+		this.fieldUpdaterInterface = context.getTypeOracle().findType(Name.getSourceNameForClass(FieldUpdater.class));
+
+		addDependency(toGenerate);
+		addDependency(beanType);
+		addDependency(factoryType);
+		if (toGenerate.isAnnotationPresent(Translations.class)) {
+			addDependency(context.getTypeOracle().findType(Name.getSourceNameForClass(toGenerate.getAnnotation(Translations.class).value())));
+		}
+
+		this.projectedRowFieldName = toGenerate.isAnnotationPresent(GeneratedTableBuilder.class) ? getUniqueName("projectedRow") : null;
+		this.shared = toGenerate.isAnnotationPresent(Shared.class);
 
 		this.columns = new ArrayList<ColumnSetModel.ColumnModel>(toGenerate.getMethods().length);
 		for (JMethod method : toGenerate.getMethods()) {
 			columns.add(new ColumnModel(method));
 		}
+
+		if (toGenerate.isAnnotationPresent(Key.class)) {
+			keyPaths.add(toGenerate.getAnnotation(Key.class).value());
+		}
+		for (ColumnModel c : columns) {
+			if (c.isKey()) {
+				keyPaths.add(c.getPath());
+			}
+		}
+		this.keyProviderFieldName = keyPaths.isEmpty() ? null : getUniqueName("keyProvider");
+
+		this.groupingsFieldName = getUniqueName("groupings");
+		this.indexedColumnClassName = getUniqueName("IndexedColumn");
+		this.indexedFieldUpdaterClassName = getUniqueName("IndexedFieldUpdater");
+		this.createColumnMethodName = getUniqueName("createColumn");
+		this.valueAtMethodName = getUniqueName("getValueAt");
+		this.projectedValueAtMethodName = getUniqueName("getProjectedValueAt");
+		this.setValueAtMethodName = getUniqueName("setValueAt");
+		this.wrapForEditorMethodName = getUniqueName("wrapForEditor");
+		this.tableBuilderClassName = getUniqueName("ColumnsTableBuilder");
 	}
 
 	private JClassType getBeanType(JClassType toGenerate) {
@@ -86,6 +157,10 @@ public class ColumnSetModel {
 	 */
 	private JClassType getFactoryType(JClassType toGenerate) {
 		JClassType columnsWithFactoryInterface = context.getTypeOracle().findType(Name.getSourceNameForClass(ColumnsWithFactory.class));
+		if (!columnsWithFactoryInterface.isAssignableFrom(toGenerate)) {
+			// findParameterizationOf asserts that it is
+			return null;
+		}
 		JClassType[] params = ModelUtils.findParameterizationOf(columnsWithFactoryInterface, toGenerate);
 		if (params != null) {
 			assert params.length == 2 : "Exactly two generic params needed for ColumnsWithFactory<T, F>";
@@ -123,6 +198,282 @@ public class ColumnSetModel {
 		return sb.append("}").toString();
 	}
 
+	/**
+	 * Lists the types that the generated code depends on - if any of these change, the generated
+	 * type will need to be rebuilt. Only available after each ColumnModel's getters and setters
+	 * have been resolved, as types found while following paths are included.
+	 * @return the qualified source names of each type this column set was built from
+	 */
+	public Set<String> getDependencies() {
+		return dependencies;
+	}
+
+	private void addDependency(JClassType type) {
+		if (type == null) {
+			return;
+		}
+		for (JClassType t : type.getErasedType().getFlattenedSupertypeHierarchy()) {
+			dependencies.add(t.getErasedType().getQualifiedSourceName());
+		}
+	}
+
+	/**
+	 * Builds a tree of all of the paths read by the columns, so that a property shared by several
+	 * paths (like "order" in "order.id" and "order.customer.name") only needs to be read once per
+	 * row. The root node represents the row itself.
+	 * @return
+	 */
+	public PathNode getPathTree() {
+		PathNode root = new PathNode(null, null, beanType);
+		for (ColumnModel c : getColumnModels()) {
+			PathNode node = root;
+			for (String property : PropertyPaths.split(c.getPath())) {
+				node = node.getChild(property);
+			}
+			node.columns.add(c);
+		}
+		return root;
+	}
+
+	/**
+	 * A single property in the tree of paths read by the columns.
+	 */
+	public class PathNode {
+		private final PathNode parent;
+		private final JMethod getter;
+		private final JType type;
+		private final Map<String, PathNode> children = new LinkedHashMap<String, PathNode>();
+		private final List<ColumnModel> columns = new ArrayList<ColumnModel>();
+
+		private PathNode(PathNode parent, JMethod getter, JType type) {
+			this.parent = parent;
+			this.getter = getter;
+			this.type = type;
+		}
+
+		private PathNode getChild(String property) {
+			PathNode child = children.get(property);
+			if (child == null) {
+				if (type.isClassOrInterface() == null) {
+					throw new RuntimeException("Tried to find " + property + ", but found a non-class type");
+				}
+				JMethod m = getSimpleGetter(property, type.isClassOrInterface());
+				child = new PathNode(this, m, m.getReturnType());
+				children.put(property, child);
+			}
+			return child;
+		}
+
+		/**
+		 * @return the node this property is read from, or null if this is the row itself
+		 */
+		public PathNode getParent() {
+			return parent;
+		}
+		/**
+		 * @param owner the expression for the value of the parent node
+		 * @return the expression to read this property
+		 */
+		public String getGetterExpression(String owner) {
+			assert parent != null : "The row itself has no getter";
+			return owner + "." + getter.getName() + "()";
+		}
+		public String getTypeName() {
+			return type.getParameterizedQualifiedSourceName();
+		}
+		public Collection<PathNode> getChildren() {
+			return children.values();
+		}
+		/**
+		 * @return the columns that read exactly this property
+		 */
+		public List<ColumnModel> getColumns() {
+			return columns;
+		}
+		/**
+		 * A property is projected when it is part of a path shared by more than one column, so
+		 * that reading it once per row saves work. Columns with a path of their own read their
+		 * value directly, as there is nothing to share.
+		 * @return true if this property should be read once per row by the table builder
+		 */
+		public boolean isProjected() {
+			return parent != null && (parent.isProjected() || countColumns() > 1);
+		}
+		private int countColumns() {
+			int count = columns.size();
+			for (PathNode child : children.values()) {
+				count += child.countColumns();
+			}
+			return count;
+		}
+		private void collectProjectedColumns(Set<ColumnModel> projected) {
+			if (isProjected()) {
+				projected.addAll(columns);
+			}
+			for (PathNode child : children.values()) {
+				child.collectProjectedColumns(projected);
+			}
+		}
+	}
+
+	/**
+	 * @return true if any column shares part of its path with another, so a table builder can
+	 * save reading the shared properties again
+	 */
+	public boolean hasProjectedColumns() {
+		return !getProjectedColumns().isEmpty();
+	}
+
+	private Set<ColumnModel> getProjectedColumns() {
+		if (projectedColumns == null) {
+			projectedColumns = new HashSet<ColumnModel>();
+			if (hasTableBuilder()) {
+				getPathTree().collectProjectedColumns(projectedColumns);
+			}
+		}
+		return projectedColumns;
+	}
+
+	/**
+	 * @return the paths marked with @Key, on the type or its columns - more than one is an error
+	 */
+	public List<String> getKeyPaths() {
+		return keyPaths;
+	}
+
+	/**
+	 * @return the name of the field holding the generated ProvidesKey, or null if there is no @Key
+	 */
+	public String getKeyProviderFieldName() {
+		return keyProviderFieldName;
+	}
+
+	/**
+	 * Builds the expression to read the row's key, marked with @Key. Must only be called if
+	 * exactly one key was declared.
+	 * @param model
+	 * @return
+	 */
+	public String getKeyExpression(String model) {
+		assert keyPaths.size() == 1 : "Exactly one @Key is required";
+		return getGetterExpression(getGetters(keyPaths.get(0)), model);
+	}
+
+	/**
+	 * Finds the get methods to call, in order, to read the given path from a row.
+	 * @param path
+	 * @return
+	 */
+	private List<JMethod> getGetters(String path) {
+		List<JMethod> getters = new ArrayList<JMethod>();
+		JClassType currentType = beanType;
+		for (String property : PropertyPaths.split(path)) {
+			if (currentType == null) {
+				throw new RuntimeException("Tried to find " + property + " from " + path + ", but found a non-class type");
+			}
+			// find the correct method, and pull up the return type in case there are more gets on the way
+			JMethod m = getSimpleGetter(property, currentType);
+			currentType = m.getReturnType().isClassOrInterface();
+			addDependency(currentType);
+			getters.add(m);
+		}
+		return getters;
+	}
+
+	private String getGetterExpression(List<JMethod> getters, String model) {
+		StringBuilder sb = new StringBuilder(model);
+		for (JMethod m : getters) {
+			sb.append(".").append(m.getName()).append("()");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return true if a CellTableBuilder should be generated that reads each row's values once
+	 */
+	public boolean hasTableBuilder() {
+		return projectedRowFieldName != null;
+	}
+
+	/**
+	 * @return the name of the field holding the row currently being built, whose column values
+	 * have already been read
+	 */
+	public String getProjectedRowFieldName() {
+		return projectedRowFieldName;
+	}
+
+	/**
+	 * @return the name of the field holding the groupings attached to this column set
+	 */
+	public String getGroupingsFieldName() {
+		return groupingsFieldName;
+	}
+
+	/**
+	 * @return the name of the Column class shared by all columns when compacted
+	 */
+	public String getIndexedColumnClassName() {
+		return indexedColumnClassName;
+	}
+
+	/**
+	 * @return the name of the FieldUpdater class shared by all editable columns when compacted
+	 */
+	public String getIndexedFieldUpdaterClassName() {
+		return indexedFieldUpdaterClassName;
+	}
+
+	/**
+	 * @return the name of the method creating each compacted column
+	 */
+	public String getCreateColumnMethodName() {
+		return createColumnMethodName;
+	}
+
+	/**
+	 * @return the name of the method reading a column's value from a row, by column index
+	 */
+	public String getValueAtMethodName() {
+		return valueAtMethodName;
+	}
+
+	/**
+	 * @return the name of the method reading a column's value from the projected row, by column
+	 * index
+	 */
+	public String getProjectedValueAtMethodName() {
+		return projectedValueAtMethodName;
+	}
+
+	/**
+	 * @return the name of the method writing a column's value to a row, by column index
+	 */
+	public String getSetValueAtMethodName() {
+		return setValueAtMethodName;
+	}
+
+	/**
+	 * @return the name of the method binding a column to an editor
+	 */
+	public String getWrapForEditorMethodName() {
+		return wrapForEditorMethodName;
+	}
+
+	/**
+	 * @return the name of the generated CellTableBuilder class
+	 */
+	public String getTableBuilderClassName() {
+		return tableBuilderClassName;
+	}
+
+	/**
+	 * @return true if stateless cells and columns should be shared by all instances
+	 */
+	public boolean isShared() {
+		return shared;
+	}
+
 	public boolean hasFactory() {
 		return getFactoryClass() != null;
 	}
@@ -149,14 +500,65 @@ public class ColumnSetModel {
 		}
 	}
 
+	public enum SortKeyType { NUMBER, STRING }
+
+	private JMethod getSimpleGetter(String propertyName, JClassType owningType) {
+		for (String name : PropertyPaths.getGetterNames(propertyName)) {
+			JMethod m = findGetMethod(owningType, name);
+			if (m != null) {
+				return m;
+			}
+		}
+		//			JField field = owningType.getField(propertyName);
+		//			if (field != null) {
+		//				return 
+		//			}
+		throw new RuntimeException("Class " + owningType + " doesn't seem to have get/is/has methods for the property " + propertyName);
+	}
+	private JMethod findGetMethod(JClassType type, String method) {
+		return type.findMethod(method, new JType[] {});
+	}
+
 	public class ColumnModel {
 		private final JMethod method;
 		private final String cellFieldName;
 		private final String columnFieldName;
+		private final String converterFieldName;
+		private final String comparatorFieldName;
+		private final String sortKeyFieldName;
+		private final String projectedValueFieldName;
+		private final String initMethodName;
+		private final String aggregateFieldName;
+
+		// resolved on first use, as each is needed several times while generating
+		private List<JMethod> getters;
+		private JClassType cellDataType;
+		private JClassType converterType;
+		private JClassType fieldUpdaterType;
+		private String headerValue;
+
 		public ColumnModel(JMethod columnMethod) {
 			this.method = columnMethod;
 			this.cellFieldName = getUniqueName(method.getName());
 			this.columnFieldName = getUniqueName(cellFieldName + "_column");
+			if (hasConverter() && getConverterScope() != ConvertedWith.Scope.CALL) {
+				this.converterFieldName = getUniqueName(cellFieldName + "_converter");
+			} else {
+				this.converterFieldName = null;
+			}
+			this.comparatorFieldName = isSortable() ? getUniqueName(cellFieldName + "_comparator") : null;
+			this.sortKeyFieldName = isSortable() ? getUniqueName(cellFieldName + "_sortKey") : null;
+			this.projectedValueFieldName = hasTableBuilder() ? getUniqueName(cellFieldName + "_value") : null;
+			this.initMethodName = isShared() ? getUniqueName(cellFieldName + "_init") : null;
+			this.aggregateFieldName = getAggregateFunction() != null ? getUniqueName(cellFieldName + "_aggregate") : null;
+
+			addDependency(getCellClass());
+			if (hasConverter()) {
+				addDependency(getConverterType());
+			}
+			if (isEditable()) {
+				addDependency(getFieldUpdaterType());
+			}
 		}
 
 		public String getMethodName() {
@@ -168,6 +570,12 @@ public class ColumnSetModel {
 			}
 			return getMethodName();
 		}
+		/**
+		 * @return the path as a Java string literal
+		 */
+		public String getQuotedPath() {
+			return quote(getPath());
+		}
 		public String getCellFieldName() {
 			return cellFieldName;
 		}
@@ -175,15 +583,78 @@ public class ColumnSetModel {
 			return columnFieldName;
 		}
 
+		/**
+		 * @return the name of the field holding the Comparator for this column, or null if it isn't
+		 * sortable
+		 */
+		public String getComparatorFieldName() {
+			return comparatorFieldName;
+		}
+
+		/**
+		 * @return the name of the field holding the KeyedListHandler key for this column, or null
+		 * if it isn't sortable
+		 */
+		public String getSortKeyFieldName() {
+			return sortKeyFieldName;
+		}
+
+		/**
+		 * @return the name of the field holding this column's value for the row being built, or
+		 * null if no table builder is being generated
+		 */
+		public String getProjectedValueFieldName() {
+			return projectedValueFieldName;
+		}
+
+		/**
+		 * @return true if the table builder reads this column's value, false if the column always
+		 * follows its own path
+		 */
+		public boolean isProjected() {
+			return getProjectedColumns().contains(this);
+		}
+
+		/**
+		 * @return the name of the static method that builds a shared cell and column, or null if
+		 * the type isn't @Shared
+		 */
+		public String getInitMethodName() {
+			return initMethodName;
+		}
+
 		public String getCellCreateExpression() {
+			if (isCreatedByFactory()) {
+				return String.format("factory.%1$s()", getMethodName());
+			}
+
+			return String.format("GWT.create(%1$s.class)", getCellClassName());
+		}
+
+		private boolean isCreatedByFactory() {
 			if (hasFactory()) {
 				JMethod factoryMethod = getFactoryClass().findMethod(getMethodName(), new JType[] {});
-				if (factoryMethod != null && factoryMethod.getReturnType().equals(getCellClass())) {
-					return String.format("factory.%1$s()", getMethodName());
-				}
+				return factoryMethod != null && factoryMethod.getReturnType().equals(getCellClass());
 			}
+			return false;
+		}
 
-			return String.format("GWT.create(%1$s.class)", getCellClassName());
+		/**
+		 * Checks if the cell can be used by several tables at once - it must not come from the
+		 * factory, which belongs to one instance, and must not keep view data for each row, as
+		 * editable cells do.
+		 * @return
+		 */
+		public boolean isCellShareable() {
+			if (isCreatedByFactory()) {
+				return false;
+			}
+			for (JClassType t : getCellClass().getFlattenedSupertypeHierarchy()) {
+				if (t.getErasedType().getQualifiedSourceName().equals(Name.getSourceNameForClass(AbstractEditableCell.class))) {
+					return false;
+				}
+			}
+			return true;
 		}
 
 		/**
@@ -202,43 +673,208 @@ public class ColumnSetModel {
 			return getCellDataType().getParameterizedQualifiedSourceName();
 		}
 		public JType getCellDataType() {
-			JClassType[] params = ModelUtils.findParameterizationOf(context.getTypeOracle().findType(Name.getSourceNameForClass(Cell.class)), getCellClass());
-			assert params.length == 1 : "Too many generic params in Cell<T>";
-			return params[0];
+			if (cellDataType == null) {
+				JClassType[] params = ModelUtils.findParameterizationOf(cellInterface, getCellClass());
+				assert params.length == 1 : "Too many generic params in Cell<T>";
+				cellDataType = params[0];
+			}
+			return cellDataType;
+		}
+
+		public boolean hasConverter() {
+			return method.isAnnotationPresent(ConvertedWith.class);
+		}
+		public String getConverterClassName() {
+			assert hasConverter() : "Cannot get a DataConverter type if not marked as @ConvertedWith";
+			return Name.getSourceNameForClass(method.getAnnotation(ConvertedWith.class).value());
+		}
+		public ConvertedWith.Scope getConverterScope() {
+			assert hasConverter() : "Cannot get a DataConverter scope if not marked as @ConvertedWith";
+			return method.getAnnotation(ConvertedWith.class).scope();
+		}
+		/**
+		 * Returns the name of the field holding the DataConverter, or null if the converter is to
+		 * be created each time it is used.
+		 * @return
+		 */
+		public String getConverterFieldName() {
+			return converterFieldName;
+		}
+		/**
+		 * Gets the expression to use to obtain the DataConverter instance - either the field that
+		 * retains it, or a GWT.create call if it is scoped to each call.
+		 * @return
+		 */
+		public String getConverterExpression() {
+			if (getConverterFieldName() != null) {
+				return getConverterFieldName();
+			}
+			return String.format("GWT.<%1$s>create(%1$s.class)", getConverterClassName());
 		}
 
 		public String getGetterInModel(String model) {
-			String getter = getGetterInModelWithoutDataConverter(model);
-			if (method.isAnnotationPresent(ConvertedWith.class)) {
-				return String.format("GWT.<%1$s>create(%1$s.class).fromModelToCell(%2$s)", Name.getSourceNameForClass(method.getAnnotation(ConvertedWith.class).value()), getter);
+			return getCellValue(getGetterInModelWithoutDataConverter(model));
+		}
+
+		/**
+		 * Builds the expression to turn the value read from the model into what the Cell expects,
+		 * applying the DataConverter if there is one.
+		 * @param modelValue
+		 * @return
+		 */
+		public String getCellValue(String modelValue) {
+			if (hasConverter()) {
+				JPrimitiveType primitive = getModelType().isPrimitive();
+				if (isIntegral(primitive) && isConverterAssignableTo(IntDataConverter.class)) {
+					return String.format("%1$s.fromIntToCell(%2$s)", getConverterExpression(), modelValue);
+				}
+				if (primitive != null && primitive != JPrimitiveType.BOOLEAN && isConverterAssignableTo(DoubleDataConverter.class)) {
+					return String.format("%1$s.fromDoubleToCell(%2$s)", getConverterExpression(), modelValue);
+				}
+				return String.format("%1$s.fromModelToCell(%2$s)", getConverterExpression(), modelValue);
 			}
-			return getter;
+			return modelValue;
 		}
 
-		private String getGetterInModelWithoutDataConverter(String model) {
-			if (getPath().length() == 0) {
-				return model;
+		private boolean isIntegral(JPrimitiveType primitive) {
+			return primitive == JPrimitiveType.INT || primitive == JPrimitiveType.SHORT
+					|| primitive == JPrimitiveType.BYTE || primitive == JPrimitiveType.CHAR;
+		}
+
+		private JClassType getConverterType() {
+			assert hasConverter() : "Cannot get a DataConverter type if not marked as @ConvertedWith";
+			if (converterType == null) {
+				converterType = context.getTypeOracle().findType(getConverterClassName());
 			}
-			String[] paths = getPath().split(Pattern.quote("."));
-			StringBuilder sb = new StringBuilder(model);
-			JClassType currentType = beanType;
-			for (String path : paths) {
-				if (currentType == null) {
-					throw new RuntimeException("Tried to find " + path + " from " + getPath() + ", but found a non-class type");
+			return converterType;
+		}
+
+		public boolean isConverterAssignableTo(Class<?> type) {
+			for (JClassType t : getConverterType().getFlattenedSupertypeHierarchy()) {
+				if (t.getErasedType().getQualifiedSourceName().equals(Name.getSourceNameForClass(type))) {
+					return true;
 				}
-				// find the correct method, and pull up the return type in case there are more gets on the way
-				JMethod m = getSimpleGetter(path, currentType);
-				currentType = m.getReturnType().isClassOrInterface();
+			}
+			return false;
+		}
 
-				sb.append(".").append(m.getName()).append("()");
+		public boolean hasFormat() {
+			return method.isAnnotationPresent(Format.class);
+		}
+
+		/**
+		 * @return the expression to create the NumberFormat requested with @Format
+		 */
+		public String getFormatExpression() {
+			assert hasFormat() : "Cannot get a format if not marked with @Format";
+			return String.format("NumberFormat.getFormat(%1$s)", quote(method.getAnnotation(Format.class).value()));
+		}
+
+		/**
+		 * @return the get methods to call, in order, to read this column's path from the model
+		 */
+		private List<JMethod> getGetters() {
+			if (getters == null) {
+				getters = ColumnSetModel.this.getGetters(getPath());
 			}
+			return getters;
+		}
+
+		public String getGetterInModelWithoutDataConverter(String model) {
+			return getGetterExpression(getGetters(), model);
+		}
+
+		/**
+		 * Gets the type of the data read from the model, before any DataConverter is applied.
+		 * @return
+		 */
+		public JType getModelType() {
+			List<JMethod> getters = getGetters();
+			if (getters.isEmpty()) {
+				return beanType;
+			}
+			return getters.get(getters.size() - 1).getReturnType();
+		}
+
+		/**
+		 * Checks if the model data can be sorted - either it is a primitive, or it is Comparable.
+		 * @return
+		 */
+		public boolean isModelTypeComparable() {
+			return getModelType().isPrimitive() != null || isModelTypeAssignableTo(Comparable.class);
+		}
 
-			return sb.toString();
+		private boolean isModelTypeAssignableTo(Class<?> type) {
+			JClassType modelType = getModelType().isClassOrInterface();
+			if (modelType == null) {
+				return false;
+			}
+			for (JClassType t : modelType.getFlattenedSupertypeHierarchy()) {
+				if (t.getErasedType().getQualifiedSourceName().equals(Name.getSourceNameForClass(type))) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Gets the kind of key that can be read from the model to sort this column with a
+		 * KeyedListHandler - primitives, Numbers and Dates can be read as numbers, Strings as
+		 * Strings. Returns null if neither applies.
+		 * @return
+		 */
+		public SortKeyType getSortKeyType() {
+			if (getModelType().isPrimitive() != null || isModelTypeAssignableTo(Number.class) || isModelTypeAssignableTo(Date.class)) {
+				return SortKeyType.NUMBER;
+			}
+			if (isModelTypeAssignableTo(String.class)) {
+				return SortKeyType.STRING;
+			}
+			return null;
+		}
+
+		/**
+		 * Builds an expression to turn a value of the model type into a sort key.
+		 * @param value
+		 * @return
+		 */
+		public String getSortKeyExpression(String value) {
+			assert getSortKeyType() != null : "Cannot make a sort key from " + getModelType();
+			if (getModelType().isPrimitive() == JPrimitiveType.BOOLEAN) {
+				return String.format("%1$s ? 1 : 0", value);
+			} else if (getModelType().isPrimitive() != null || getSortKeyType() == SortKeyType.STRING) {
+				return value;
+			} else if (isModelTypeAssignableTo(Date.class)) {
+				return String.format("%1$s == null ? Double.NaN : %1$s.getTime()", value);
+			}
+			return String.format("%1$s == null ? Double.NaN : %1$s.doubleValue()", value);
+		}
+
+		/**
+		 * Builds an expression comparing two values of the model type, as a Comparator would.
+		 * Primitives are compared directly, without boxing, and null objects are sorted first.
+		 * @param a
+		 * @param b
+		 * @return
+		 */
+		public String getCompareExpression(String a, String b) {
+			assert isModelTypeComparable() : "Cannot compare values of " + getModelType();
+			JPrimitiveType primitive = getModelType().isPrimitive();
+			if (primitive == JPrimitiveType.BOOLEAN) {
+				return String.format("%1$s == %2$s ? 0 : (%1$s ? 1 : -1)", a, b);
+			} else if (primitive == JPrimitiveType.DOUBLE) {
+				return String.format("Double.compare(%1$s, %2$s)", a, b);
+			} else if (primitive == JPrimitiveType.FLOAT) {
+				return String.format("Float.compare(%1$s, %2$s)", a, b);
+			} else if (primitive != null) {
+				return String.format("%1$s < %2$s ? -1 : (%1$s == %2$s ? 0 : 1)", a, b);
+			}
+			return String.format("%1$s == %2$s ? 0 : (%1$s == null ? -1 : (%2$s == null ? 1 : %1$s.compareTo(%2$s)))", a, b);
 		}
 
 		public String getSetterInModel(String model, String value) {
-			if (method.isAnnotationPresent(ConvertedWith.class)) {
-				value = String.format("GWT.<%1$s>create(%1$s.class).fromCellToModel(%2$s)", Name.getSourceNameForClass(method.getAnnotation(ConvertedWith.class).value()), value);
+			if (hasConverter()) {
+				value = String.format("%1$s.fromCellToModel(%2$s)", getConverterExpression(), value);
 			}
 			String setter = getSetterInModelWithoutDataConverter(model, value);
 			return setter;
@@ -249,7 +885,7 @@ public class ColumnSetModel {
 			if (getPath().length() == 0) {
 				throw new RuntimeException("Cannot call setters for @Path(\"\") at this time.");
 			}
-			String[] paths = getPath().split(Pattern.quote("."));
+			String[] paths = PropertyPaths.split(getPath());
 			StringBuilder sb = new StringBuilder(model);
 			JClassType currentType = beanType;
 			for (String path : paths) {
@@ -258,47 +894,22 @@ public class ColumnSetModel {
 				}
 
 				// see if we have a setter, append it, and return it
-				if (currentType.getOverloads("set" + capitalize(path)).length != 0) {
-					return sb.append(".").append("set").append(capitalize(path)).append("(").append(value).append(")").toString();
+				String setter = PropertyPaths.getSetterName(path);
+				if (currentType.getOverloads(setter).length != 0) {
+					return sb.append(".").append(setter).append("(").append(value).append(")").toString();
 				}
 
 				// ok, try a getter instead
 				// find the current getter, and pull up the return type in case there are more gets on the way
 				JMethod m = getSimpleGetter(path, currentType);
 				currentType = m.getReturnType().isClassOrInterface();
+				addDependency(currentType);
 
 				sb.append(".").append(m.getName()).append("()");
 			}
 			throw new RuntimeException("Tried to find setter in " + currentType.getName() + " for property " + paths[paths.length - 1] + " and failed.");
 		}
 
-		private JMethod getSimpleGetter(String propertyName, JClassType owningType) {
-			String capProp = capitalize(propertyName);
-			JMethod m;
-			m = findGetMethod(owningType, "get" + capProp);
-			if (m != null) {
-				return m;
-			}
-			m = findGetMethod(owningType, "is" + capProp);
-			if (m != null) {
-				return m;
-			} 
-			m = findGetMethod(owningType, "has" + capProp);
-			if (m != null) {
-				return m;
-			}
-			//			JField field = owningType.getField(propertyName);
-			//			if (field != null) {
-			//				return 
-			//			}
-			throw new RuntimeException("Class " + owningType + " doesn't seem to have get/is/has methods for the property " + propertyName);
-		}
-		private JMethod findGetMethod(JClassType type, String method) {
-			return type.findMethod(method, new JType[] {});
-		}
-		private String capitalize(String str) {
-			return str.substring(0, 1).toUpperCase() + str.substring(1);
-		}
 
 		/**
 		 * Creates the header string to be used in the table column.<br>
@@ -306,6 +917,13 @@ public class ColumnSetModel {
 		 * @return the header value
 		 */
 		public String getHeaderValue() {
+			if (headerValue == null) {
+				headerValue = createHeaderValue();
+			}
+			return headerValue;
+		}
+
+		private String createHeaderValue() {
 			if (method.isAnnotationPresent(Header.class)) {
 				Header header = method.getAnnotation(Header.class);
 				String headerValue = header.value();
@@ -385,6 +1003,65 @@ public class ColumnSetModel {
 			return "null";
 		}
 
+		/**
+		 * @return the function to show in the footer, or null if there is none
+		 */
+		public Aggregate.Function getAggregateFunction() {
+			return method.isAnnotationPresent(Aggregate.class) ? method.getAnnotation(Aggregate.class).value() : null;
+		}
+
+		public String getAggregateFieldName() {
+			return aggregateFieldName;
+		}
+
+		/**
+		 * @return true if the model data can be read as a number for the aggregate function
+		 */
+		public boolean canAggregate() {
+			return getModelType().isPrimitive() != null || isModelTypeAssignableTo(Number.class)
+					|| getAggregateFunction() == Aggregate.Function.COUNT;
+		}
+
+		/**
+		 * Builds an expression to read a value of the model type as a double for its aggregate,
+		 * without boxing primitives. Null values are read as NaN, and other values are read as 0
+		 * if only counted.
+		 * @param value
+		 * @return
+		 */
+		public String getAggregateValueExpression(String value) {
+			assert canAggregate() : "Cannot aggregate " + getModelType();
+			JPrimitiveType primitive = getModelType().isPrimitive();
+			if (primitive == JPrimitiveType.BOOLEAN) {
+				return String.format("%1$s ? 1 : 0", value);
+			} else if (primitive != null) {
+				return value;
+			} else if (isModelTypeAssignableTo(Number.class)) {
+				return String.format("%1$s == null ? Double.NaN : %1$s.doubleValue()", value);
+			}
+			return String.format("%1$s == null ? Double.NaN : 0", value);
+		}
+
+		public boolean isGroupBy() {
+			return method.isAnnotationPresent(GroupBy.class);
+		}
+
+		/**
+		 * @param other
+		 * @return true if setting the other column's property may change the value of this one
+		 */
+		public boolean isAffectedBy(ColumnModel other) {
+			return getPath().equals(other.getPath()) || getPath().startsWith(other.getPath() + ".");
+		}
+
+		public boolean isFilterable() {
+			return method.isAnnotationPresent(Filterable.class);
+		}
+
+		public boolean isKey() {
+			return method.isAnnotationPresent(Key.class);
+		}
+
 		/**
 		 * @return
 		 */
@@ -397,14 +1074,17 @@ public class ColumnSetModel {
 		 */
 		public JClassType getFieldUpdaterType() {
 			assert isEditable() : "Cannot get a FieldUpdater type if not marked as @Editable";
-			return context.getTypeOracle().findType(Name.getSourceNameForClass(method.getAnnotation(Editable.class).value()));
+			if (fieldUpdaterType == null) {
+				fieldUpdaterType = context.getTypeOracle().findType(Name.getSourceNameForClass(method.getAnnotation(Editable.class).value()));
+			}
+			return fieldUpdaterType;
 		}
 
 		/**
 		 * @return
 		 */
 		public boolean hasCustomFieldUpdater() {
-			return !getFieldUpdaterType().equals(context.getTypeOracle().findType(Name.getSourceNameForClass(FieldUpdater.class)));
+			return !getFieldUpdaterType().equals(fieldUpdaterInterface);
 		}
 	}
 }
\ No newline at end of file
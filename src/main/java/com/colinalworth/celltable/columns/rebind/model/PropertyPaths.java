@@ -0,0 +1,61 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.rebind.model;
+
+import java.util.regex.Pattern;
+
+/**
+ * How the path of a column is read from the row, shared by the GWT generator and the annotation
+ * processor so that both follow a path through the same methods.
+ * 
+ * @author colin
+ *
+ */
+public final class PropertyPaths {
+	private PropertyPaths() {
+	}
+
+	/**
+	 * Splits a path into the properties to read, in order. The empty path, meaning the row
+	 * itself, has no properties.
+	 * @param path
+	 * @return
+	 */
+	public static String[] split(String path) {
+		if (path.length() == 0) {
+			return new String[0];
+		}
+		return path.split(Pattern.quote("."));
+	}
+
+	/**
+	 * @param property
+	 * @return the names of the methods that may read the property, in the order to look for them
+	 */
+	public static String[] getGetterNames(String property) {
+		String capProp = capitalize(property);
+		return new String[] {"get" + capProp, "is" + capProp, "has" + capProp};
+	}
+
+	public static String getSetterName(String property) {
+		return "set" + capitalize(property);
+	}
+
+	private static String capitalize(String str) {
+		return str.substring(0, 1).toUpperCase() + str.substring(1);
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.server;
+
+import java.util.List;
+
+/**
+ * Reads the columns of a {@link com.colinalworth.celltable.columns.client.Columns} interface
+ * from rows in a plain JVM, for example to export the same data shown in a table. Implementations
+ * are generated by {@link com.colinalworth.celltable.columns.apt.ColumnsProcessor} for each
+ * Columns type marked with
+ * {@link com.colinalworth.celltable.columns.client.Columns.ServerAccessors}, named for the
+ * interface with a <code>_Accessors</code> suffix, and may be created with their default
+ * constructor.
+ * 
+ * Values are read as the generated Column would read them - following the same path, and passed
+ * through the same DataConverter, if any.
+ * 
+ * @author colin
+ *
+ * @param <T> the type of each row
+ */
+public interface ColumnAccessors<T> {
+	/**
+	 * @return the name of the method declaring each column, in the order they are declared
+	 */
+	List<String> getColumnNames();
+
+	/**
+	 * Gets the header of each column, in the same order as the columns. Headers set with
+	 * {@link com.colinalworth.celltable.columns.client.Columns.Header} are not translated, as
+	 * GWT Constants are not available here. Columns without a header use their name.
+	 * @return
+	 */
+	List<String> getHeaders();
+
+	/**
+	 * Reads the value of one column from the given row. Each generated type also has a typed
+	 * method for each column, named for the column, which avoids boxing primitive values.
+	 * @param column the index of the column, in the order they are declared
+	 * @param row
+	 * @return the value that the column's Cell would be given
+	 */
+	Object getValue(int column, T row);
+}
@@ -0,0 +1,41 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+
+import com.colinalworth.celltable.columns.client.ColumnsBenchmark;
+import com.colinalworth.celltable.columns.client.CompactColumnsBenchmark;
+import com.google.gwt.junit.tools.GWTTestSuite;
+
+/**
+ * Benchmarks for generated columns, not run with the tests - use the benchmarks profile.
+ *
+ * @author colin
+ *
+ */
+public class GWTColumnsBenchmarks extends TestCase {
+	public static Test suite() {
+		GWTTestSuite suite = new GWTTestSuite("ColumnCreator Benchmarks");
+
+		suite.addTestSuite(ColumnsBenchmark.class);
+		suite.addTestSuite(CompactColumnsBenchmark.class);
+
+		return suite;
+	}
+}
@@ -19,8 +19,11 @@ package com.colinalworth.celltable.columns;
 import junit.framework.Test;
 import junit.framework.TestCase;
 
+import com.colinalworth.celltable.columns.client.ColumnsMetricsTest;
 import com.colinalworth.celltable.columns.client.ColumnsTest;
 import com.colinalworth.celltable.columns.client.ColumnsWithFactoryTest;
+import com.colinalworth.celltable.columns.client.CompactColumnsTest;
+import com.colinalworth.celltable.columns.client.HasDataFlushableEditorTest;
 import com.google.gwt.junit.tools.GWTTestSuite;
 
 /**
@@ -33,6 +36,9 @@ public class GWTColumnsCreatorSuite extends TestCase {
 
 		suite.addTestSuite(ColumnsTest.class);
 		suite.addTestSuite(ColumnsWithFactoryTest.class);
+		suite.addTestSuite(HasDataFlushableEditorTest.class);
+		suite.addTestSuite(ColumnsMetricsTest.class);
+		suite.addTestSuite(CompactColumnsTest.class);
 
 		return suite;
 	}
@@ -0,0 +1,203 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.apt;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import junit.framework.TestCase;
+
+import com.colinalworth.celltable.columns.server.ColumnAccessors;
+
+/**
+ * Compiles small Columns interfaces with the processor, and reads rows with the generated
+ * accessors.
+ *
+ * @author colin
+ *
+ */
+public class ColumnsProcessorTest extends TestCase {
+	private File dir;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("columns", "apt");
+		dir.delete();
+		new File(dir, "test").mkdirs();
+
+		write("test/Address.java",
+				"package test;",
+				"public class Address {",
+				"  public String getCity() { return \"Saint Paul\"; }",
+				"}");
+		write("test/Person.java",
+				"package test;",
+				"public class Person {",
+				"  public String getName() { return \"colin\"; }",
+				"  public int getAge() { return 30; }",
+				"  public boolean isAdmin() { return true; }",
+				"  public Address getAddress() { return new Address(); }",
+				"}");
+		write("test/AgeConverter.java",
+				"package test;",
+				"import com.colinalworth.celltable.columns.client.DataConverter;",
+				"public class AgeConverter implements DataConverter<Integer, String> {",
+				"  public String fromModelToCell(Integer model) { return model + \" years\"; }",
+				"  public Integer fromCellToModel(String cell) { return null; }",
+				"}");
+	}
+
+	public void testAccessors() throws Exception {
+		write("test/Outer.java",
+				"package test;",
+				"import com.colinalworth.celltable.columns.client.Columns;",
+				"import com.google.gwt.cell.client.*;",
+				"import com.google.gwt.editor.client.Editor.Path;",
+				"public class Outer {",
+				"  @Columns.ServerAccessors",
+				"  public interface PersonColumns extends Columns<Person> {",
+				"    @Header(\"Name\") TextCell name();",
+				"    @Path(\"address.city\") TextCell city();",
+				"    @ConvertedWith(value = AgeConverter.class, scope = ConvertedWith.Scope.SINGLETON) TextCell age();",
+				"    @Path(\"age\") NumberCell rawAge();",
+				"    CheckboxCell admin();",
+				"  }",
+				"}");
+		assertEquals(Collections.emptyList(), compile("test/Address.java", "test/Person.java", "test/AgeConverter.java", "test/Outer.java"));
+
+		ClassLoader loader = new URLClassLoader(new URL[] {dir.toURI().toURL()}, getClass().getClassLoader());
+		@SuppressWarnings("unchecked")
+		ColumnAccessors<Object> accessors = (ColumnAccessors<Object>) loader.loadClass("test.Outer_PersonColumns_Accessors").newInstance();
+		Object person = loader.loadClass("test.Person").newInstance();
+
+		assertEquals(Arrays.asList("name", "city", "age", "rawAge", "admin"), accessors.getColumnNames());
+		assertEquals(Arrays.asList("Name", "city", "age", "rawAge", "admin"), accessors.getHeaders());
+		assertEquals("colin", accessors.getValue(0, person));
+		assertEquals("Saint Paul", accessors.getValue(1, person));
+		assertEquals("30 years", accessors.getValue(2, person));
+		assertEquals(30, accessors.getValue(3, person));
+		assertEquals(true, accessors.getValue(4, person));
+
+		// typed methods read primitives directly
+		assertEquals(int.class, accessors.getClass().getMethod("rawAge", person.getClass()).getReturnType());
+	}
+
+	public void testMissingProperty() throws Exception {
+		write("test/BrokenColumns.java",
+				"package test;",
+				"import com.colinalworth.celltable.columns.client.Columns;",
+				"import com.google.gwt.cell.client.*;",
+				"import com.google.gwt.editor.client.Editor.Path;",
+				"@Columns.ServerAccessors",
+				"public interface BrokenColumns extends Columns<Person> {",
+				"  @Path(\"address.zip\") TextCell zip();",
+				"}");
+		List<String> errors = compile("test/Address.java", "test/Person.java", "test/BrokenColumns.java");
+		assertEquals(1, errors.size());
+		assertTrue(errors.get(0), errors.get(0).contains("zip"));
+	}
+
+	public void testReservedName() throws Exception {
+		write("test/ReservedColumns.java",
+				"package test;",
+				"import com.colinalworth.celltable.columns.client.Columns;",
+				"import com.google.gwt.cell.client.*;",
+				"import com.google.gwt.editor.client.Editor.Path;",
+				"@Columns.ServerAccessors",
+				"public interface ReservedColumns extends Columns<Person> {",
+				"  @Path(\"name\") TextCell getHeaders();",
+				"}");
+		List<String> errors = compile("test/Address.java", "test/Person.java", "test/ReservedColumns.java");
+		assertEquals(1, errors.size());
+		assertTrue(errors.get(0), errors.get(0).contains("getHeaders"));
+	}
+
+	public void testUnparameterized() throws Exception {
+		write("test/RawColumns.java",
+				"package test;",
+				"import com.colinalworth.celltable.columns.client.Columns;",
+				"import com.google.gwt.cell.client.*;",
+				"@Columns.ServerAccessors",
+				"@SuppressWarnings(\"rawtypes\")",
+				"public interface RawColumns extends Columns {",
+				"  TextCell name();",
+				"}");
+		write("test/GenericColumns.java",
+				"package test;",
+				"import com.colinalworth.celltable.columns.client.Columns;",
+				"import com.google.gwt.cell.client.*;",
+				"@Columns.ServerAccessors",
+				"public interface GenericColumns<T> extends Columns<T> {",
+				"  TextCell name();",
+				"}");
+		List<String> errors = compile("test/RawColumns.java", "test/GenericColumns.java");
+		assertEquals(2, errors.size());
+		assertTrue(errors.get(0), errors.get(0).contains("parameterized"));
+		assertTrue(errors.get(1), errors.get(1).contains("parameterized"));
+	}
+
+	/**
+	 * Compiles the given files with only the ColumnsProcessor, into the same directory.
+	 * @return the errors reported
+	 */
+	private List<String> compile(String... paths) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+		List<File> files = new ArrayList<File>();
+		for (String path : paths) {
+			files.add(new File(dir, path));
+		}
+		CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+				Arrays.asList("-d", dir.getPath(), "-s", dir.getPath()), null, fileManager.getJavaFileObjectsFromFiles(files));
+		task.setProcessors(Collections.singletonList(new ColumnsProcessor()));
+		task.call();
+		fileManager.close();
+
+		List<String> errors = new ArrayList<String>();
+		for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+			if (d.getKind() == Diagnostic.Kind.ERROR) {
+				errors.add(d.getMessage(null));
+			}
+		}
+		return errors;
+	}
+
+	private void write(String path, String... lines) throws IOException {
+		PrintWriter pw = new PrintWriter(new FileWriter(new File(dir, path)));
+		for (String line : lines) {
+			pw.println(line);
+		}
+		pw.close();
+	}
+}
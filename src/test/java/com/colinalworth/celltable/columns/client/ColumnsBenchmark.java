@@ -0,0 +1,543 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.client;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.colinalworth.celltable.columns.client.Columns.Format;
+import com.colinalworth.celltable.columns.client.converters.DoubleConverter;
+import com.colinalworth.celltable.columns.client.converters.IntegerConverter;
+import com.google.gwt.benchmarks.client.Benchmark;
+import com.google.gwt.benchmarks.client.IterationTimeLimit;
+import com.google.gwt.benchmarks.client.RangeEnum;
+import com.google.gwt.benchmarks.client.RangeField;
+import com.google.gwt.benchmarks.client.Setup;
+import com.google.gwt.cell.client.DateCell;
+import com.google.gwt.cell.client.NumberCell;
+import com.google.gwt.cell.client.TextCell;
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.editor.client.Editor.Path;
+import com.google.gwt.user.cellview.client.CellTable;
+
+/**
+ * Measures the generated code in the most common uses - configuring a table, drawing rows, and
+ * flushing changes made through editable columns. Run with GWTColumnsBenchmarks, using the
+ * benchmarks profile (mvn test -Pbenchmarks). Results are written as XML by the GWT benchmark
+ * framework, to the directory given in the com.google.gwt.junit.reportPath system property, so
+ * they can be compared between releases.
+ *
+ * @author colin
+ *
+ */
+public class ColumnsBenchmark extends Benchmark {
+	@Override
+	public String getModuleName() {
+		return "com.colinalworth.celltable.columns.ColumnsTest";
+	}
+
+	public static class Row {
+		private String name;
+		private int count;
+		private double amount;
+		private Date created;
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+		public int getCount() {
+			return count;
+		}
+		public double getAmount() {
+			return amount;
+		}
+		public Date getCreated() {
+			return created;
+		}
+	}
+
+	interface FiveColumns extends Columns<Row> {
+		@Path("name")
+		TextCell column0();
+		@Path("count")
+		NumberCell column1();
+		@Path("amount")
+		NumberCell column2();
+		@Path("created")
+		DateCell column3();
+		@Path("name")
+		TextCell column4();
+	}
+	interface TwentyColumns extends Columns<Row> {
+		@Path("name")
+		TextCell column0();
+		@Path("count")
+		NumberCell column1();
+		@Path("amount")
+		NumberCell column2();
+		@Path("created")
+		DateCell column3();
+		@Path("name")
+		TextCell column4();
+		@Path("count")
+		NumberCell column5();
+		@Path("amount")
+		NumberCell column6();
+		@Path("created")
+		DateCell column7();
+		@Path("name")
+		TextCell column8();
+		@Path("count")
+		NumberCell column9();
+		@Path("amount")
+		NumberCell column10();
+		@Path("created")
+		DateCell column11();
+		@Path("name")
+		TextCell column12();
+		@Path("count")
+		NumberCell column13();
+		@Path("amount")
+		NumberCell column14();
+		@Path("created")
+		DateCell column15();
+		@Path("name")
+		TextCell column16();
+		@Path("count")
+		NumberCell column17();
+		@Path("amount")
+		NumberCell column18();
+		@Path("created")
+		DateCell column19();
+	}
+	interface HundredColumns extends Columns<Row> {
+		@Path("name")
+		TextCell column0();
+		@Path("count")
+		NumberCell column1();
+		@Path("amount")
+		NumberCell column2();
+		@Path("created")
+		DateCell column3();
+		@Path("name")
+		TextCell column4();
+		@Path("count")
+		NumberCell column5();
+		@Path("amount")
+		NumberCell column6();
+		@Path("created")
+		DateCell column7();
+		@Path("name")
+		TextCell column8();
+		@Path("count")
+		NumberCell column9();
+		@Path("amount")
+		NumberCell column10();
+		@Path("created")
+		DateCell column11();
+		@Path("name")
+		TextCell column12();
+		@Path("count")
+		NumberCell column13();
+		@Path("amount")
+		NumberCell column14();
+		@Path("created")
+		DateCell column15();
+		@Path("name")
+		TextCell column16();
+		@Path("count")
+		NumberCell column17();
+		@Path("amount")
+		NumberCell column18();
+		@Path("created")
+		DateCell column19();
+		@Path("name")
+		TextCell column20();
+		@Path("count")
+		NumberCell column21();
+		@Path("amount")
+		NumberCell column22();
+		@Path("created")
+		DateCell column23();
+		@Path("name")
+		TextCell column24();
+		@Path("count")
+		NumberCell column25();
+		@Path("amount")
+		NumberCell column26();
+		@Path("created")
+		DateCell column27();
+		@Path("name")
+		TextCell column28();
+		@Path("count")
+		NumberCell column29();
+		@Path("amount")
+		NumberCell column30();
+		@Path("created")
+		DateCell column31();
+		@Path("name")
+		TextCell column32();
+		@Path("count")
+		NumberCell column33();
+		@Path("amount")
+		NumberCell column34();
+		@Path("created")
+		DateCell column35();
+		@Path("name")
+		TextCell column36();
+		@Path("count")
+		NumberCell column37();
+		@Path("amount")
+		NumberCell column38();
+		@Path("created")
+		DateCell column39();
+		@Path("name")
+		TextCell column40();
+		@Path("count")
+		NumberCell column41();
+		@Path("amount")
+		NumberCell column42();
+		@Path("created")
+		DateCell column43();
+		@Path("name")
+		TextCell column44();
+		@Path("count")
+		NumberCell column45();
+		@Path("amount")
+		NumberCell column46();
+		@Path("created")
+		DateCell column47();
+		@Path("name")
+		TextCell column48();
+		@Path("count")
+		NumberCell column49();
+		@Path("amount")
+		NumberCell column50();
+		@Path("created")
+		DateCell column51();
+		@Path("name")
+		TextCell column52();
+		@Path("count")
+		NumberCell column53();
+		@Path("amount")
+		NumberCell column54();
+		@Path("created")
+		DateCell column55();
+		@Path("name")
+		TextCell column56();
+		@Path("count")
+		NumberCell column57();
+		@Path("amount")
+		NumberCell column58();
+		@Path("created")
+		DateCell column59();
+		@Path("name")
+		TextCell column60();
+		@Path("count")
+		NumberCell column61();
+		@Path("amount")
+		NumberCell column62();
+		@Path("created")
+		DateCell column63();
+		@Path("name")
+		TextCell column64();
+		@Path("count")
+		NumberCell column65();
+		@Path("amount")
+		NumberCell column66();
+		@Path("created")
+		DateCell column67();
+		@Path("name")
+		TextCell column68();
+		@Path("count")
+		NumberCell column69();
+		@Path("amount")
+		NumberCell column70();
+		@Path("created")
+		DateCell column71();
+		@Path("name")
+		TextCell column72();
+		@Path("count")
+		NumberCell column73();
+		@Path("amount")
+		NumberCell column74();
+		@Path("created")
+		DateCell column75();
+		@Path("name")
+		TextCell column76();
+		@Path("count")
+		NumberCell column77();
+		@Path("amount")
+		NumberCell column78();
+		@Path("created")
+		DateCell column79();
+		@Path("name")
+		TextCell column80();
+		@Path("count")
+		NumberCell column81();
+		@Path("amount")
+		NumberCell column82();
+		@Path("created")
+		DateCell column83();
+		@Path("name")
+		TextCell column84();
+		@Path("count")
+		NumberCell column85();
+		@Path("amount")
+		NumberCell column86();
+		@Path("created")
+		DateCell column87();
+		@Path("name")
+		TextCell column88();
+		@Path("count")
+		NumberCell column89();
+		@Path("amount")
+		NumberCell column90();
+		@Path("created")
+		DateCell column91();
+		@Path("name")
+		TextCell column92();
+		@Path("count")
+		NumberCell column93();
+		@Path("amount")
+		NumberCell column94();
+		@Path("created")
+		DateCell column95();
+		@Path("name")
+		TextCell column96();
+		@Path("count")
+		NumberCell column97();
+		@Path("amount")
+		NumberCell column98();
+		@Path("created")
+		DateCell column99();
+	}
+	interface ConvertedColumns extends Columns<Row> {
+		@ConvertedWith(IntegerConverter.class)
+		@Path("count")
+		TextCell column0();
+		@ConvertedWith(DoubleConverter.class)
+		@Format("#,##0.00")
+		@Path("amount")
+		TextCell column1();
+		@ConvertedWith(IntegerConverter.class)
+		@Path("count")
+		TextCell column2();
+		@ConvertedWith(DoubleConverter.class)
+		@Format("#,##0.00")
+		@Path("amount")
+		TextCell column3();
+		@ConvertedWith(IntegerConverter.class)
+		@Path("count")
+		TextCell column4();
+		@ConvertedWith(DoubleConverter.class)
+		@Format("#,##0.00")
+		@Path("amount")
+		TextCell column5();
+		@ConvertedWith(IntegerConverter.class)
+		@Path("count")
+		TextCell column6();
+		@ConvertedWith(DoubleConverter.class)
+		@Format("#,##0.00")
+		@Path("amount")
+		TextCell column7();
+		@ConvertedWith(IntegerConverter.class)
+		@Path("count")
+		TextCell column8();
+		@ConvertedWith(DoubleConverter.class)
+		@Format("#,##0.00")
+		@Path("amount")
+		TextCell column9();
+		@ConvertedWith(IntegerConverter.class)
+		@Path("count")
+		TextCell column10();
+		@ConvertedWith(DoubleConverter.class)
+		@Format("#,##0.00")
+		@Path("amount")
+		TextCell column11();
+		@ConvertedWith(IntegerConverter.class)
+		@Path("count")
+		TextCell column12();
+		@ConvertedWith(DoubleConverter.class)
+		@Format("#,##0.00")
+		@Path("amount")
+		TextCell column13();
+		@ConvertedWith(IntegerConverter.class)
+		@Path("count")
+		TextCell column14();
+		@ConvertedWith(DoubleConverter.class)
+		@Format("#,##0.00")
+		@Path("amount")
+		TextCell column15();
+		@ConvertedWith(IntegerConverter.class)
+		@Path("count")
+		TextCell column16();
+		@ConvertedWith(DoubleConverter.class)
+		@Format("#,##0.00")
+		@Path("amount")
+		TextCell column17();
+		@ConvertedWith(IntegerConverter.class)
+		@Path("count")
+		TextCell column18();
+		@ConvertedWith(DoubleConverter.class)
+		@Format("#,##0.00")
+		@Path("amount")
+		TextCell column19();
+	}
+
+	/**
+	 * Number of columns declared in the Columns type being measured.
+	 */
+	protected enum Width {
+		FIVE, TWENTY, HUNDRED
+	}
+
+	protected final Integer[] rowCounts = {10, 100};
+	protected final Integer[] changeCounts = {1000, 10000};
+
+	private CellTable<Row> table;
+	private Object tableKey;
+	private List<Row> rows;
+	private HasDataFlushableEditor<Row> editor;
+	private HasDataFlushableEditor<Row>.PendingFieldUpdateChange<String> updater;
+
+	@Override
+	protected void gwtSetUp() throws Exception {
+		// the first table and Columns instances created pay for loading styles and types
+		for (Width width : Width.values()) {
+			create(width).configure(new CellTable<Row>());
+		}
+	}
+
+	private Columns<Row> create(Width width) {
+		switch (width) {
+		case FIVE:
+			return GWT.create(FiveColumns.class);
+		case TWENTY:
+			return GWT.create(TwentyColumns.class);
+		default:
+			return GWT.create(HundredColumns.class);
+		}
+	}
+
+	private List<Row> createRows(int count) {
+		if (rows != null && rows.size() == count) {
+			return rows;
+		}
+		List<Row> rows = new ArrayList<Row>(count);
+		for (int i = 0; i < count; i++) {
+			Row row = new Row();
+			row.name = "row " + i;
+			row.count = i;
+			row.amount = i * 1.5;
+			row.created = new Date(i * 86400000L);
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	private CellTable<Row> createTable(int pageSize) {
+		CellTable<Row> table = new CellTable<Row>(pageSize);
+		table.setRowCount(pageSize, true);
+		return table;
+	}
+
+	/**
+	 * Draws all rows, even if they are the same as last time.
+	 */
+	private void render() {
+		table.setRowData(0, rows);
+		table.redraw();
+		table.flush();
+	}
+
+	public void testConfigure() {
+	}
+	/**
+	 * Creates a Columns instance and adds its columns to a new table.
+	 */
+	@IterationTimeLimit(0)
+	public void testConfigure(@RangeEnum(Width.class) Width width) {
+		create(width).configure(new CellTable<Row>());
+	}
+
+	public void testRender() {
+	}
+	public void setupRender(Width width, Integer rowCount) {
+		// setup is run before every call, so only build a new table when the parameters change
+		String key = width + " " + rowCount;
+		if (!key.equals(tableKey)) {
+			table = createTable(rowCount);
+			create(width).configure(table);
+			tableKey = key;
+		}
+		rows = createRows(rowCount);
+	}
+	/**
+	 * Draws every row in a table.
+	 */
+	@Setup("setupRender")
+	@IterationTimeLimit(5000)
+	public void testRender(@RangeEnum(Width.class) Width width, @RangeField("rowCounts") Integer rowCount) {
+		render();
+	}
+
+	public void testRenderConverted() {
+	}
+	public void setupRenderConverted(Integer rowCount) {
+		if (!rowCount.equals(tableKey)) {
+			table = createTable(rowCount);
+			GWT.<ConvertedColumns>create(ConvertedColumns.class).configure(table);
+			tableKey = rowCount;
+		}
+		rows = createRows(rowCount);
+	}
+	/**
+	 * Draws every row in a table where each column formats a number with a DataConverter.
+	 */
+	@Setup("setupRenderConverted")
+	@IterationTimeLimit(5000)
+	public void testRenderConverted(@RangeField("rowCounts") Integer rowCount) {
+		render();
+	}
+
+	public void testFlush() {
+	}
+	public void setupFlush(Integer changeCount) {
+		editor = HasDataFlushableEditor.of(new CellTable<Row>());
+		updater = editor.new PendingFieldUpdateChange<String>() {
+			@Override
+			public void commit(int index, Row object, String value) {
+				object.setName(value);
+			}
+		};
+		rows = createRows(changeCount);
+	}
+	/**
+	 * Queues a change to each of the rows, then flushes them all to the model.
+	 */
+	@Setup("setupFlush")
+	public void testFlush(@RangeField("changeCounts") Integer changeCount) {
+		for (int i = 0; i < changeCount; i++) {
+			updater.update(i, rows.get(i), "changed");
+		}
+		editor.flush();
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.client;
+
+import com.colinalworth.celltable.columns.client.ColumnsMetrics.Operation;
+import com.colinalworth.celltable.columns.client.converters.IntegerConverter;
+import com.google.gwt.cell.client.EditTextCell;
+import com.google.gwt.cell.client.TextCell;
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.editor.client.Editor.Path;
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.gwt.user.cellview.client.CellTable;
+import com.google.gwt.user.cellview.client.Column;
+
+/**
+ *
+ * @author colin
+ *
+ */
+public class ColumnsMetricsTest extends GWTTestCase {
+	@Override
+	public String getModuleName() {
+		return "com.colinalworth.celltable.columns.ColumnsInstrumentedTest";
+	}
+
+	interface Person {
+		String getName();
+		void setName(String name);
+		int getAge();
+	}
+	interface PersonColumns extends Columns<Person> {
+		@Editable
+		EditTextCell name();
+		@ConvertedWith(IntegerConverter.class)
+		@Path("age")
+		TextCell age();
+	}
+	static class PersonImpl implements Person {
+		String name = "colin";
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+		public int getAge() {
+			return 30;
+		}
+	}
+
+	@Override
+	protected void gwtTearDown() throws Exception {
+		ColumnsMetrics.setSink(null);
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testCallsRecorded() {
+		ColumnsMetrics.Totals totals = new ColumnsMetrics.Totals();
+		ColumnsMetrics.setSink(totals);
+
+		PersonColumns c = GWT.create(PersonColumns.class);
+		CellTable<Person> cellTable = new CellTable<Person>();
+		c.configure(cellTable);
+		Person person = new PersonImpl();
+
+		Column<Person, String> name = (Column<Person, String>) cellTable.getColumn(0);
+		assertEquals("colin", name.getValue(person));
+		name.getFieldUpdater().update(0, person, "alworth");
+		assertEquals("alworth", person.getName());
+
+		Column<Person, String> age = (Column<Person, String>) cellTable.getColumn(1);
+		assertEquals("30", age.getValue(person));
+		assertEquals("30", age.getValue(person));
+
+		String prefix = PersonColumns.class.getName().replace('$', '.') + ".";
+		assertEquals(1, totals.getCount(prefix + "name", Operation.GET_VALUE));
+		assertEquals(1, totals.getCount(prefix + "name", Operation.UPDATE));
+		assertEquals(0, totals.getCount(prefix + "name", Operation.CONVERT));
+		assertEquals(2, totals.getCount(prefix + "age", Operation.GET_VALUE));
+		assertEquals(2, totals.getCount(prefix + "age", Operation.CONVERT));
+		assertTrue(totals.getTotalMillis(prefix + "age", Operation.GET_VALUE) >= 0);
+	}
+
+	public void testCallStartedWithoutSinkNotRecorded() {
+		double start = ColumnsMetrics.start();
+		ColumnsMetrics.Totals totals = new ColumnsMetrics.Totals();
+		ColumnsMetrics.setSink(totals);
+		ColumnsMetrics.record("column", Operation.GET_VALUE, start);
+		assertEquals(0, totals.getCount("column", Operation.GET_VALUE));
+
+		ColumnsMetrics.record("column", Operation.GET_VALUE, ColumnsMetrics.start());
+		assertEquals(1, totals.getCount("column", Operation.GET_VALUE));
+	}
+}
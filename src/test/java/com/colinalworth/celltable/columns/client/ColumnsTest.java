@@ -16,9 +16,23 @@
  */
 package com.colinalworth.celltable.columns.client;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
 
+import com.colinalworth.celltable.columns.client.Columns.Aggregate;
+import com.colinalworth.celltable.columns.client.Columns.Filterable;
+import com.colinalworth.celltable.columns.client.Columns.Format;
+import com.colinalworth.celltable.columns.client.Columns.GeneratedTableBuilder;
+import com.colinalworth.celltable.columns.client.Columns.GroupBy;
+import com.colinalworth.celltable.columns.client.Columns.Key;
+import com.colinalworth.celltable.columns.client.Columns.Shared;
 import com.colinalworth.celltable.columns.client.Columns.Translations;
+import com.colinalworth.celltable.columns.client.converters.DoubleConverter;
+import com.colinalworth.celltable.columns.client.converters.IntegerConverter;
+import com.google.gwt.cell.client.AbstractCell;
 import com.google.gwt.cell.client.DateCell;
 import com.google.gwt.cell.client.EditTextCell;
 import com.google.gwt.cell.client.FieldUpdater;
@@ -27,8 +41,18 @@ import com.google.gwt.cell.client.TextCell;
 import com.google.gwt.core.client.GWT;
 import com.google.gwt.editor.client.Editor.Path;
 import com.google.gwt.i18n.client.Constants;
+import com.google.gwt.i18n.client.NumberFormat;
 import com.google.gwt.junit.client.GWTTestCase;
+import com.google.gwt.safehtml.shared.SafeHtmlBuilder;
+import com.google.gwt.user.cellview.client.CellList;
 import com.google.gwt.user.cellview.client.CellTable;
+import com.google.gwt.user.cellview.client.Column;
+import com.google.gwt.user.cellview.client.ColumnSortEvent;
+import com.google.gwt.user.cellview.client.ColumnSortEvent.ListHandler;
+import com.google.gwt.user.cellview.client.DataGrid;
+import com.google.gwt.view.client.ListDataProvider;
+import com.google.gwt.view.client.MultiSelectionModel;
+import com.google.gwt.view.client.ProvidesKey;
 
 /**
  * 
@@ -56,6 +80,13 @@ public class ColumnsTest extends GWTTestCase {
 		assertEquals(1, cellTable.getColumnCount());
 	}
 
+	public void testDataGrid() {
+		SimplePaths cols = GWT.create(SimplePaths.class);
+		DataGrid<IBeanModel> dataGrid = new DataGrid<IBeanModel>();
+		cols.configure(dataGrid);
+		assertEquals(1, dataGrid.getColumnCount());
+	}
+
 	interface ComplexBeanModel {
 		String getStringProp();
 		Date getDateObj();
@@ -99,6 +130,419 @@ public class ColumnsTest extends GWTTestCase {
 		GWT.create(DateToYearConverter.class);
 		c.configure(cellTable);
 	}
+
+	interface ScopedConverters extends Columns<ComplexBeanModel> {
+		@ConvertedWith(value = CountingConverter.class, scope = ConvertedWith.Scope.INSTANCE)
+		@Path("stringProp")
+		TextCell instanceScoped();
+		@ConvertedWith(value = CountingConverter.class, scope = ConvertedWith.Scope.CALL)
+		@Path("stringProp")
+		TextCell callScoped();
+	}
+	public static class CountingConverter implements DataConverter<String, String> {
+		static int created = 0;
+		public CountingConverter() {
+			created++;
+		}
+		public String fromCellToModel(String cell) {
+			return cell;
+		}
+		public String fromModelToCell(String model) {
+			return model;
+		}
+	}
+	@SuppressWarnings("unchecked")
+	public void testConverterScope() {
+		ComplexBeanModel bean = new ComplexBeanModel() {
+			public String getStringProp() {
+				return "value";
+			}
+			public Date getDateObj() {
+				return null;
+			}
+			public int getIntPrimitive() {
+				return 0;
+			}
+		};
+		CountingConverter.created = 0;
+		ScopedConverters c = GWT.create(ScopedConverters.class);
+		assertEquals(1, CountingConverter.created);
+
+		CellTable<ComplexBeanModel> cellTable = new CellTable<ComplexBeanModel>();
+		c.configure(cellTable);
+
+		Column<ComplexBeanModel, String> instanceScoped = (Column<ComplexBeanModel, String>) cellTable.getColumn(0);
+		assertEquals("value", instanceScoped.getValue(bean));
+		assertEquals("value", instanceScoped.getValue(bean));
+		assertEquals(1, CountingConverter.created);
+
+		Column<ComplexBeanModel, String> callScoped = (Column<ComplexBeanModel, String>) cellTable.getColumn(1);
+		assertEquals("value", callScoped.getValue(bean));
+		assertEquals("value", callScoped.getValue(bean));
+		assertEquals(3, CountingConverter.created);
+	}
+
+	interface SingletonConverters extends Columns<ComplexBeanModel> {
+		@ConvertedWith(value = SingletonCountingConverter.class, scope = ConvertedWith.Scope.SINGLETON)
+		@Path("stringProp")
+		TextCell singleton();
+	}
+	public static class SingletonCountingConverter extends CountingConverter {
+		static int created = 0;
+		public SingletonCountingConverter() {
+			created++;
+		}
+	}
+	@SuppressWarnings("unchecked")
+	public void testSingletonConverterShared() {
+		SingletonConverters first = GWT.create(SingletonConverters.class);
+		SingletonConverters second = GWT.create(SingletonConverters.class);
+		// created once, in a static field, no matter how many instances use it
+		assertEquals(1, SingletonCountingConverter.created);
+
+		CellTable<ComplexBeanModel> firstTable = new CellTable<ComplexBeanModel>();
+		CellTable<ComplexBeanModel> secondTable = new CellTable<ComplexBeanModel>();
+		first.configure(firstTable);
+		second.configure(secondTable);
+		assertEquals("first", ((Column<ComplexBeanModel, String>) firstTable.getColumn(0)).getValue(bean("first", 1)));
+		assertEquals("second", ((Column<ComplexBeanModel, String>) secondTable.getColumn(0)).getValue(bean("second", 2)));
+		assertEquals(1, SingletonCountingConverter.created);
+	}
+	interface NumberColumns extends Columns<ComplexBeanModel> {
+		@ConvertedWith(IntegerConverter.class)
+		@Path("intPrimitive")
+		TextCell plain();
+		@ConvertedWith(DoubleConverter.class)
+		@Format("#,##0.00")
+		@Path("intPrimitive")
+		TextCell formatted();
+	}
+	@SuppressWarnings("unchecked")
+	public void testNumberConverters() {
+		NumberColumns c = GWT.create(NumberColumns.class);
+		CellTable<ComplexBeanModel> cellTable = new CellTable<ComplexBeanModel>();
+		c.configure(cellTable);
+
+		assertEquals("1234", ((Column<ComplexBeanModel, String>) cellTable.getColumn(0)).getValue(bean("", 1234)));
+		assertEquals("1,234.00", ((Column<ComplexBeanModel, String>) cellTable.getColumn(1)).getValue(bean("", 1234)));
+	}
+	public void testIntegerConverterRejectsNonInts() {
+		IntegerConverter converter = new IntegerConverter();
+		converter.setNumberFormat(NumberFormat.getDecimalFormat());
+		assertEquals(Integer.valueOf(1234), converter.fromCellToModel("1,234"));
+		for (String cell : new String[] {"1.5", "1e10", "-3000000000"}) {
+			try {
+				converter.fromCellToModel(cell);
+				fail("Expected " + cell + " to be rejected");
+			} catch (NumberFormatException expected) {
+				// expected
+			}
+		}
+	}
+
+	interface SortableColumns extends Columns<ComplexBeanModel> {
+		@Sortable
+		@Path("intPrimitive")
+		NumberCell number();
+		@Sortable
+		@Path("stringProp")
+		TextCell string();
+	}
+	static ComplexBeanModel bean(final String stringProp, final int intPrimitive) {
+		return new ComplexBeanModel() {
+			public String getStringProp() {
+				return stringProp;
+			}
+			public Date getDateObj() {
+				return null;
+			}
+			public int getIntPrimitive() {
+				return intPrimitive;
+			}
+		};
+	}
+	public void testSortableComparators() {
+		SortableColumns c = GWT.create(SortableColumns.class);
+		CellTable<ComplexBeanModel> cellTable = new CellTable<ComplexBeanModel>();
+		ListHandler<ComplexBeanModel> handler = new ListHandler<ComplexBeanModel>(new ArrayList<ComplexBeanModel>());
+		c.configure(cellTable, null, handler);
+
+		Comparator<ComplexBeanModel> number = handler.getComparator(cellTable.getColumn(0));
+		assertTrue(number.compare(bean("a", 1), bean("a", 2)) < 0);
+		assertTrue(number.compare(bean("a", 2), bean("a", 1)) > 0);
+		assertEquals(0, number.compare(bean("a", 2), bean("b", 2)));
+
+		Comparator<ComplexBeanModel> string = handler.getComparator(cellTable.getColumn(1));
+		assertTrue(string.compare(bean("a", 1), bean("b", 1)) < 0);
+		assertTrue(string.compare(bean(null, 1), bean("b", 1)) < 0);
+		assertTrue(string.compare(bean("a", 1), bean(null, 1)) > 0);
+		assertEquals(0, string.compare(bean(null, 1), bean(null, 2)));
+	}
+
+	public void testKeyedSort() {
+		SortableColumns c = GWT.create(SortableColumns.class);
+		CellTable<ComplexBeanModel> cellTable = new CellTable<ComplexBeanModel>();
+		ComplexBeanModel b1 = bean("b", 3);
+		ComplexBeanModel b2 = bean(null, 1);
+		ComplexBeanModel b3 = bean("a", 2);
+		ComplexBeanModel b4 = bean("c", 2);
+		List<ComplexBeanModel> list = new ArrayList<ComplexBeanModel>(Arrays.asList(b1, b2, b3, b4));
+		KeyedListHandler<ComplexBeanModel> handler = new KeyedListHandler<ComplexBeanModel>(list);
+		c.configure(cellTable, null, handler);
+
+		cellTable.getColumnSortList().push(cellTable.getColumn(0));
+		ColumnSortEvent.fire(cellTable, cellTable.getColumnSortList());
+		assertEquals(Arrays.asList(b2, b3, b4, b1), list);
+
+		cellTable.getColumnSortList().push(cellTable.getColumn(0));
+		ColumnSortEvent.fire(cellTable, cellTable.getColumnSortList());
+		assertEquals(Arrays.asList(b1, b3, b4, b2), list);
+
+		cellTable.getColumnSortList().push(cellTable.getColumn(1));
+		ColumnSortEvent.fire(cellTable, cellTable.getColumnSortList());
+		assertEquals(Arrays.asList(b2, b3, b1, b4), list);
+	}
+
+	interface KeyedColumns extends Columns<ComplexBeanModel> {
+		@Path("stringProp")
+		TextCell string();
+		@Key
+		@ConvertedWith(IntegerConverter.class)
+		@Path("intPrimitive")
+		TextCell number();
+	}
+	@Key("dateObj.time")
+	interface TypeKeyedColumns extends Columns<ComplexBeanModel> {
+		@Path("stringProp")
+		TextCell string();
+	}
+	public void testKeyProvider() {
+		KeyedColumns c = GWT.create(KeyedColumns.class);
+		ProvidesKey<ComplexBeanModel> keys = c.getKeyProvider();
+		assertEquals(12, keys.getKey(bean("a", 12)));
+		assertEquals(keys.getKey(bean("a", 12)), keys.getKey(bean("b", 12)));
+		assertNull(keys.getKey(null));
+
+		CellTable<ComplexBeanModel> cellTable = new CellTable<ComplexBeanModel>(10, keys);
+		c.configure(cellTable);
+		MultiSelectionModel<ComplexBeanModel> selection = new MultiSelectionModel<ComplexBeanModel>(keys);
+		cellTable.setSelectionModel(selection);
+		selection.setSelected(bean("a", 1), true);
+		// a refreshed copy of the row is still selected
+		assertTrue(selection.isSelected(bean("a", 1)));
+
+		TypeKeyedColumns typeKeyed = GWT.create(TypeKeyedColumns.class);
+		assertEquals(1234L, typeKeyed.getKeyProvider().getKey(new CountingBean() {
+			@Override
+			public Date getDateObj() {
+				return new Date(1234);
+			}
+		}));
+
+		assertNull(GWT.<SimplePaths>create(SimplePaths.class).getKeyProvider());
+	}
+
+	@Shared
+	interface SharedColumns extends Columns<EditableBeanModel> {
+		@Path("stringProp")
+		TextCell text();
+		@Editable
+		@Path("stringProp")
+		EditTextCell editable();
+	}
+	/**
+	 * @return true if stateless columns are shared between instances, not just their cells
+	 */
+	protected boolean sharesColumns() {
+		return true;
+	}
+	public void testSharedColumns() {
+		SharedColumns first = GWT.create(SharedColumns.class);
+		SharedColumns second = GWT.create(SharedColumns.class);
+		assertSame(first.text(), second.text());
+		// editable cells keep view data for each table
+		assertNotSame(first.editable(), second.editable());
+
+		CellTable<EditableBeanModel> firstTable = new CellTable<EditableBeanModel>();
+		CellTable<EditableBeanModel> secondTable = new CellTable<EditableBeanModel>();
+		first.configure(firstTable);
+		second.configure(secondTable);
+		assertEquals(sharesColumns(), firstTable.getColumn(0) == secondTable.getColumn(0));
+		assertNotSame(firstTable.getColumn(1), secondTable.getColumn(1));
+
+		firstTable.setRowData(Arrays.<EditableBeanModel>asList(new EditableBean("first")));
+		secondTable.setRowData(Arrays.<EditableBeanModel>asList(new EditableBean("second")));
+		firstTable.flush();
+		secondTable.flush();
+		assertEquals("first", firstTable.getRowElement(0).getCells().getItem(0).getInnerText());
+		assertEquals("second", secondTable.getRowElement(0).getCells().getItem(0).getInnerText());
+	}
+
+	@GeneratedTableBuilder
+	interface BuiltRows extends Columns<ComplexBeanModel> {
+		@Path("stringProp")
+		TextCell string();
+		@Path("intPrimitive")
+		NumberCell number();
+	}
+	public void testGeneratedTableBuilder() {
+		BuiltRows c = GWT.create(BuiltRows.class);
+		CellTable<ComplexBeanModel> cellTable = new CellTable<ComplexBeanModel>();
+		c.configure(cellTable);
+
+		cellTable.setRowData(Arrays.asList(bean("first", 1), bean("second", 2)));
+		cellTable.flush();
+		assertEquals("first", cellTable.getRowElement(0).getCells().getItem(0).getInnerText());
+		assertEquals("2", cellTable.getRowElement(1).getCells().getItem(1).getInnerText());
+
+		// outside of building a row, values are still read normally
+		assertEquals("third", cellTable.getColumn(0).getValue(bean("third", 3)));
+	}
+
+	@GeneratedTableBuilder
+	interface SharedPaths extends Columns<ComplexBeanModel> {
+		@Path("dateObj")
+		DateCell date();
+		@Path("dateObj.year")
+		NumberCell year();
+		@Path("dateObj.month")
+		NumberCell month();
+		@Path("stringProp")
+		TextCell string();
+	}
+	static class CountingBean implements ComplexBeanModel {
+		int dateReads;
+		public String getStringProp() {
+			return "counted";
+		}
+		public Date getDateObj() {
+			dateReads++;
+			return new Date();
+		}
+		public int getIntPrimitive() {
+			return 0;
+		}
+	}
+	public void testSharedPathsReadOnce() {
+		SharedPaths c = GWT.create(SharedPaths.class);
+		CellTable<ComplexBeanModel> cellTable = new CellTable<ComplexBeanModel>();
+		c.configure(cellTable);
+
+		CountingBean bean = new CountingBean();
+		cellTable.setRowData(Arrays.<ComplexBeanModel>asList(bean));
+		cellTable.flush();
+		assertEquals(1, bean.dateReads);
+		// a column sharing nothing reads its own path
+		assertEquals("counted", cellTable.getRowElement(0).getCells().getItem(3).getInnerText());
+	}
+
+	interface ExportColumns extends Columns<ComplexBeanModel> {
+		@Header("Name")
+		@Path("stringProp")
+		TextCell name();
+		@ConvertedWith(IntegerConverter.class)
+		@Path("intPrimitive")
+		TextCell number();
+	}
+	public void testExport() {
+		ExportColumns c = GWT.create(ExportColumns.class);
+		List<ComplexBeanModel> rows = new ArrayList<ComplexBeanModel>();
+		rows.add(bean("with, \"quotes\"", 0));
+		rows.add(bean(null, 1));
+		for (int i = 2; i < 2 * CsvExport.ROWS_PER_CHUNK + 10; i++) {
+			rows.add(bean("row", i));
+		}
+		final StringBuilder out = new StringBuilder();
+		final List<Integer> progress = new ArrayList<Integer>();
+		final int total = rows.size();
+
+		delayTestFinish(10000);
+		c.export(rows, out, new CsvExport.Callback() {
+			public void onProgress(int exported, int total) {
+				progress.add(exported);
+			}
+			public void onComplete() {
+				assertEquals(Arrays.asList(CsvExport.ROWS_PER_CHUNK, 2 * CsvExport.ROWS_PER_CHUNK), progress);
+				String[] lines = out.toString().split("\r\n");
+				assertEquals(total + 1, lines.length);
+				assertEquals("Name,number", lines[0]);
+				assertEquals("\"with, \"\"quotes\"\"\",0", lines[1]);
+				assertEquals(",1", lines[2]);
+				assertEquals("row," + (total - 1), lines[total]);
+				finishTest();
+			}
+			public void onFailure(java.io.IOException e) {
+				fail(e.getMessage());
+			}
+		});
+		// nothing is written until the export is scheduled
+		assertEquals(0, out.length());
+	}
+
+	interface FilterColumns extends Columns<ComplexBeanModel> {
+		@Filterable
+		@Path("stringProp")
+		TextCell name();
+		@Filterable
+		@ConvertedWith(IntegerConverter.class)
+		@Path("intPrimitive")
+		TextCell number();
+		@Path("dateObj")
+		DateCell date();
+	}
+
+	public void testFilter() {
+		FilterColumns c = GWT.create(FilterColumns.class);
+		ListDataProvider<ComplexBeanModel> provider = new ListDataProvider<ComplexBeanModel>();
+		ColumnFilter<ComplexBeanModel> filter = c.createFilter(provider);
+		List<ComplexBeanModel> rows = new ArrayList<ComplexBeanModel>();
+		rows.add(bean("Saint  Paul", 12));
+		rows.add(bean("Minneapolis", 21));
+		rows.add(bean(null, 3));
+		filter.setRows(rows);
+		assertEquals(rows, provider.getList());
+
+		// converted values are searched, ignoring case
+		filter.setQuery("  SAINT paul ");
+		assertEquals("saint paul", filter.getQuery());
+		assertEquals(Arrays.asList(rows.get(0)), provider.getList());
+
+		filter.setQuery("1");
+		assertEquals(Arrays.asList(rows.get(0), rows.get(1)), provider.getList());
+		// refined from the last matches
+		filter.setQuery("12");
+		assertEquals(Arrays.asList(rows.get(0)), provider.getList());
+		// each term may match a different column, but not across columns
+		filter.setQuery("12 paul");
+		assertEquals(1, filter.getMatchCount());
+		filter.setQuery("paul12");
+		assertEquals(0, filter.getMatchCount());
+
+		filter.setQuery("3");
+		assertEquals(Arrays.asList(rows.get(2)), provider.getList());
+		ComplexBeanModel changed = bean("changed", 4);
+		filter.setRow(2, changed);
+		assertEquals(0, filter.getMatchCount());
+
+		filter.setQuery("");
+		assertEquals(Arrays.asList(rows.get(0), rows.get(1), changed), provider.getList());
+	}
+
+	public void testFilterProviderList() {
+		FilterColumns c = GWT.create(FilterColumns.class);
+		ListDataProvider<ComplexBeanModel> provider = new ListDataProvider<ComplexBeanModel>();
+		provider.getList().addAll(Arrays.asList(bean("a", 1), bean("b", 2), bean("c", 3)));
+		List<ComplexBeanModel> rows = new ArrayList<ComplexBeanModel>(provider.getList());
+		ColumnFilter<ComplexBeanModel> filter = c.createFilter(provider);
+
+		// filtering the provider's own rows doesn't lose those filtered out
+		filter.setRows(provider.getList());
+		filter.setQuery("b");
+		assertEquals(Arrays.asList(rows.get(1)), provider.getList());
+		filter.setQuery("");
+		assertEquals(rows, provider.getList());
+	}
+
 	interface EditableBeanModel {
 		void setStringProp(String value);
 		String getStringProp();
@@ -118,6 +562,259 @@ public class ColumnsTest extends GWTTestCase {
 	}
 
 
+	static class EditableBean implements EditableBeanModel {
+		String stringProp;
+		EditableBean(String stringProp) {
+			this.stringProp = stringProp;
+		}
+		public void setStringProp(String value) {
+			this.stringProp = value;
+		}
+		public String getStringProp() {
+			return stringProp;
+		}
+	}
+	@SuppressWarnings("unchecked")
+	public void testFlushedDeltas() {
+		SimpleEditableColumns c = GWT.create(SimpleEditableColumns.class);
+		CellTable<EditableBeanModel> cellTable = new CellTable<EditableBeanModel>();
+		HasDataFlushableEditor<EditableBeanModel> editor = HasDataFlushableEditor.of(cellTable);
+		c.configure(cellTable, editor);
+
+		EditableBean first = new EditableBean("a");
+		EditableBean second = new EditableBean("b");
+		FieldUpdater<EditableBeanModel, String> updater = ((Column<EditableBeanModel, String>) cellTable.getColumn(0)).getFieldUpdater();
+		updater.update(0, first, "a1");
+		updater.update(0, first, "a2");
+		updater.update(1, second, "b1");
+		assertTrue(editor.getFlushedDeltas().isEmpty());
+
+		editor.flush();
+		List<HasDataFlushableEditor.Delta<EditableBeanModel>> deltas = editor.getFlushedDeltas();
+		assertEquals(2, deltas.size());
+		assertSame(first, deltas.get(0).getRow());
+		assertEquals("stringProp", deltas.get(0).getPath());
+		assertEquals("a", deltas.get(0).getOldValue());
+		assertEquals("a2", deltas.get(0).getNewValue());
+		assertEquals("b", deltas.get(1).getOldValue());
+		assertEquals(Arrays.<EditableBeanModel>asList(first, second), new ArrayList<EditableBeanModel>(editor.getDirtyRows()));
+		assertEquals(Arrays.asList(c.getPaths()), new ArrayList<String>(editor.getDirtyPaths()));
+
+		// the next flush replaces them
+		editor.flush();
+		assertTrue(editor.getDirtyRows().isEmpty());
+	}
+
+	interface AmountModel {
+		int getAmount();
+		void setAmount(int amount);
+		Integer getBonus();
+	}
+	static class Amount implements AmountModel {
+		int amount;
+		Integer bonus;
+		Amount(int amount, Integer bonus) {
+			this.amount = amount;
+			this.bonus = bonus;
+		}
+		public int getAmount() {
+			return amount;
+		}
+		public void setAmount(int amount) {
+			this.amount = amount;
+		}
+		public Integer getBonus() {
+			return bonus;
+		}
+	}
+	interface AggregateColumns extends Columns<AmountModel> {
+		@Editable
+		@Aggregate(Aggregate.Function.SUM)
+		@ConvertedWith(IntegerConverter.class)
+		EditTextCell amount();
+		@Aggregate(Aggregate.Function.MAX)
+		@Path("amount")
+		NumberCell maxAmount();
+		@Aggregate(Aggregate.Function.COUNT)
+		@Path("bonus")
+		NumberCell bonuses();
+		@Aggregate(Aggregate.Function.AVG)
+		@Path("bonus")
+		NumberCell averageBonus();
+		@Path("bonus")
+		NumberCell bonus();
+	}
+	@SuppressWarnings("unchecked")
+	public void testAggregateFooters() {
+		AggregateColumns c = GWT.create(AggregateColumns.class);
+		CellTable<AmountModel> cellTable = new CellTable<AmountModel>();
+		HasDataFlushableEditor<AmountModel> editor = HasDataFlushableEditor.of(cellTable);
+		c.configure(cellTable, editor);
+		assertNull(cellTable.getFooter(4));
+
+		Amount first = new Amount(10, 1);
+		Amount second = new Amount(20, null);
+		Amount third = new Amount(30, 4);
+		c.setAggregateRows(Arrays.<AmountModel>asList(first, second, third));
+		assertEquals("60", cellTable.getFooter(0).getValue());
+		assertEquals("30", cellTable.getFooter(1).getValue());
+		// nulls are skipped
+		assertEquals("2", cellTable.getFooter(2).getValue());
+		assertEquals("2.5", cellTable.getFooter(3).getValue());
+
+		// edits update the footer when flushed
+		FieldUpdater<AmountModel, String> updater = ((Column<AmountModel, String>) cellTable.getColumn(0)).getFieldUpdater();
+		updater.update(2, third, "5");
+		assertEquals("60", cellTable.getFooter(0).getValue());
+		editor.flush();
+		assertEquals(5, third.getAmount());
+		assertEquals("35", cellTable.getFooter(0).getValue());
+		// the max was changed, so is found again
+		assertEquals("20", cellTable.getFooter(1).getValue());
+
+		c.setAggregateRows(new ArrayList<AmountModel>());
+		assertEquals("0", cellTable.getFooter(0).getValue());
+		assertEquals("", cellTable.getFooter(1).getValue());
+	}
+
+	interface GroupedColumns extends Columns<AmountModel> {
+		@Editable
+		@GroupBy
+		@ConvertedWith(IntegerConverter.class)
+		EditTextCell amount();
+		@Path("bonus")
+		NumberCell bonus();
+	}
+	@SuppressWarnings("unchecked")
+	public void testGrouping() {
+		GroupedColumns c = GWT.create(GroupedColumns.class);
+		CellTable<AmountModel> cellTable = new CellTable<AmountModel>();
+		c.configure(cellTable);
+		ListDataProvider<AmountModel> provider = new ListDataProvider<AmountModel>();
+		ColumnGrouping<AmountModel> grouping = c.createGrouping(provider);
+		grouping.attach(cellTable);
+		provider.addDataDisplay(cellTable);
+
+		Amount a = new Amount(1, null);
+		Amount b = new Amount(2, null);
+		Amount d = new Amount(1, null);
+		grouping.setRows(Arrays.<AmountModel>asList(a, b, d));
+		grouping.flush();
+		assertEquals(Arrays.<AmountModel>asList(a, d, b), provider.getList());
+		assertEquals(2, grouping.getGroups().size());
+		assertEquals(1, grouping.getGroup(a).getKey());
+		assertEquals(2, grouping.getGroup(a).getSize());
+
+		// each group starts with a header row
+		assertEquals(ColumnGrouping.GROUP_HEADER_CLASS, cellTable.getRowElement(0).getClassName());
+		assertFalse(ColumnGrouping.GROUP_HEADER_CLASS.equals(cellTable.getRowElement(1).getClassName()));
+		assertEquals(ColumnGrouping.GROUP_HEADER_CLASS, cellTable.getRowElement(2).getClassName());
+
+		// only the first row of a collapsed group is kept, to draw its header
+		grouping.setExpanded(1, false);
+		grouping.flush();
+		assertEquals(Arrays.<AmountModel>asList(a, b), provider.getList());
+
+		// editing the key moves the row to its new group, and empty groups are removed
+		FieldUpdater<AmountModel, String> updater = ((Column<AmountModel, String>) cellTable.getColumn(0)).getFieldUpdater();
+		updater.update(2, b, "1");
+		assertEquals(1, grouping.getGroups().size());
+		assertSame(grouping.getGroup(a), grouping.getGroup(b));
+		grouping.setExpanded(1, true);
+		grouping.flush();
+		assertEquals(Arrays.<AmountModel>asList(a, d, b), provider.getList());
+
+		Amount e = new Amount(3, null);
+		grouping.add(e);
+		grouping.remove(a);
+		grouping.flush();
+		assertEquals(Arrays.<AmountModel>asList(d, b, e), provider.getList());
+
+		// only the rows after the moved row are drawn again
+		CountingDisplay display = new CountingDisplay();
+		provider.addDataDisplay(display);
+		display.start = -1;
+		updater.update(2, e, "1");
+		grouping.flush();
+		assertEquals(Arrays.<AmountModel>asList(d, b, e), provider.getList());
+		assertEquals(0, display.start);
+		assertEquals(3, display.length);
+		// a new group is only appended
+		Amount f = new Amount(6, null);
+		grouping.add(f);
+		grouping.flush();
+		assertEquals(3, display.start);
+		assertEquals(1, display.length);
+		grouping.remove(f);
+
+		// rows edited in another grouping aren't added to this one
+		ColumnGrouping<AmountModel> other = c.createGrouping(new ListDataProvider<AmountModel>());
+		other.setRows(Arrays.<AmountModel>asList(d));
+		updater.update(1, b, "4");
+		assertNull(other.getGroup(b));
+		assertEquals(2, grouping.getGroups().size());
+
+		// a disposed grouping no longer regroups edited rows
+		other.dispose();
+		updater.update(0, d, "5");
+		assertNull(other.getGroup(d));
+		assertEquals(5, grouping.getGroup(d).getKey());
+	}
+
+	interface ReservedNameColumns extends Columns<AmountModel> {
+		@Editable
+		@GroupBy
+		@Path("amount")
+		@ConvertedWith(IntegerConverter.class)
+		EditTextCell groupings();
+		@Path("bonus")
+		NumberCell getValueAt();
+	}
+	@SuppressWarnings("unchecked")
+	public void testColumnsNamedLikeHelpers() {
+		ReservedNameColumns c = GWT.create(ReservedNameColumns.class);
+		CellTable<AmountModel> cellTable = new CellTable<AmountModel>();
+		c.configure(cellTable);
+		assertNotNull(c.groupings());
+		assertNotNull(c.getValueAt());
+
+		ListDataProvider<AmountModel> provider = new ListDataProvider<AmountModel>();
+		ColumnGrouping<AmountModel> grouping = c.createGrouping(provider);
+		grouping.attach(cellTable);
+		Amount a = new Amount(1, 2);
+		Amount b = new Amount(2, null);
+		grouping.setRows(Arrays.<AmountModel>asList(a, b));
+		grouping.flush();
+		assertEquals(2, grouping.getGroups().size());
+		assertEquals(2, cellTable.getColumn(1).getValue(a));
+
+		FieldUpdater<AmountModel, String> updater = ((Column<AmountModel, String>) cellTable.getColumn(0)).getFieldUpdater();
+		updater.update(1, b, "1");
+		assertEquals(1, grouping.getGroups().size());
+	}
+
+	/**
+	 * Records the range of the last rows set in it.
+	 */
+	static class CountingDisplay extends CellList<AmountModel> {
+		int start;
+		int length;
+		CountingDisplay() {
+			super(new AbstractCell<AmountModel>() {
+				@Override
+				public void render(Context context, AmountModel value, SafeHtmlBuilder sb) {
+				}
+			});
+			setPageSize(100);
+		}
+		@Override
+		public void setRowData(int start, List<? extends AmountModel> values) {
+			this.start = start;
+			this.length = values.size();
+			super.setRowData(start, values);
+		}
+	}
+
 	interface DataWithFieldUpdater extends Columns<EditableBeanModel> {
 		@Editable(EditableBeanModelFieldUpdater.class)
 		EditTextCell stringProp();
@@ -0,0 +1,36 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.client;
+
+/**
+ * Runs the same tests as {@link ColumnsTest}, with all columns generated in compact mode.
+ *
+ * @author colin
+ *
+ */
+public class CompactColumnsTest extends ColumnsTest {
+	@Override
+	public String getModuleName() {
+		return "com.colinalworth.celltable.columns.ColumnsCompactTest";
+	}
+
+	@Override
+	protected boolean sharesColumns() {
+		// compact columns read through each instance's switch, so only their cells are shared
+		return false;
+	}
+}
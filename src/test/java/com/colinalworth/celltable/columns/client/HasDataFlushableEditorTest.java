@@ -0,0 +1,327 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.gwt.cell.client.TextCell;
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.editor.client.CompositeEditor.EditorChain;
+import com.google.gwt.editor.client.ValueAwareEditor;
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.gwt.user.cellview.client.CellTable;
+
+/**
+ *
+ * @author colin
+ *
+ */
+public class HasDataFlushableEditorTest extends GWTTestCase {
+	@Override
+	public String getModuleName() {
+		return "com.colinalworth.celltable.columns.ColumnsTest";
+	}
+
+	static class Bean {
+		String value;
+		String other;
+		public String getValue() {
+			return value;
+		}
+		public String getOther() {
+			return other;
+		}
+	}
+	interface BeanColumns extends Columns<Bean> {
+		TextCell value();
+	}
+
+	public void testPendingChangesCoalesced() {
+		CellTable<Bean> cellTable = new CellTable<Bean>();
+		HasDataFlushableEditor<Bean> editor = HasDataFlushableEditor.of(cellTable);
+		final List<String> committed = new ArrayList<String>();
+		HasDataFlushableEditor<Bean>.PendingFieldUpdateChange<String> updater = editor.new PendingFieldUpdateChange<String>() {
+			@Override
+			public void commit(int index, Bean object, String value) {
+				object.value = value;
+				committed.add(value);
+			}
+		};
+
+		Bean first = new Bean();
+		Bean second = new Bean();
+		for (int i = 0; i < 10; i++) {
+			updater.update(0, first, "first " + i);
+		}
+		updater.update(1, second, "second");
+		assertEquals(2, editor.getPendingChangeCount());
+
+		editor.flush();
+		assertEquals(2, committed.size());
+		assertEquals("first 9", first.value);
+		assertEquals("second", second.value);
+		assertEquals(0, editor.getPendingChangeCount());
+
+		// already flushed changes must not be replayed
+		editor.flush();
+		assertEquals(2, committed.size());
+	}
+
+	public void testPendingChangesFollowRows() {
+		CellTable<Bean> cellTable = new CellTable<Bean>();
+		HasDataFlushableEditor<Bean> editor = HasDataFlushableEditor.of(cellTable);
+		editor.setEditorChain(new SimpleChain());
+		HasDataFlushableEditor<Bean>.PendingFieldUpdateChange<String> updater = editor.new PendingFieldUpdateChange<String>() {
+			@Override
+			public void commit(int index, Bean object, String value) {
+				object.value = value;
+			}
+		};
+		Bean a = new Bean();
+		a.other = "a";
+		Bean b = new Bean();
+		b.other = "b";
+		editor.setValue(new ArrayList<Bean>(Arrays.asList(a, b)));
+
+		updater.update(0, a, "edited a");
+		// sort descending, so another row is now at index 0
+		Collections.sort(editor.getList(), new Comparator<Bean>() {
+			public int compare(Bean o1, Bean o2) {
+				return o2.other.compareTo(o1.other);
+			}
+		});
+		assertSame(b, editor.getList().get(0));
+		updater.update(0, b, "edited b");
+		assertEquals(2, editor.getPendingChangeCount());
+
+		editor.flush();
+		assertEquals("edited a", a.value);
+		assertEquals("edited b", b.value);
+		assertEquals(2, editor.getFlushedDeltas().size());
+		assertSame(a, editor.getFlushedDeltas().get(0).getRow());
+		assertEquals("edited a", editor.getFlushedDeltas().get(0).getNewValue());
+		assertSame(b, editor.getFlushedDeltas().get(1).getRow());
+		assertEquals("edited b", editor.getFlushedDeltas().get(1).getNewValue());
+	}
+
+	public void testFlushAsync() {
+		CellTable<Bean> cellTable = new CellTable<Bean>();
+		final HasDataFlushableEditor<Bean> editor = HasDataFlushableEditor.of(cellTable);
+		final List<Bean> beans = new ArrayList<Bean>();
+		HasDataFlushableEditor<Bean>.PendingFieldUpdateChange<String> updater = editor.new PendingFieldUpdateChange<String>() {
+			@Override
+			public void commit(int index, Bean object, String value) {
+				object.value = value;
+			}
+		};
+		for (int i = 0; i < 1000; i++) {
+			Bean bean = new Bean();
+			beans.add(bean);
+			updater.update(i, bean, "value " + i);
+		}
+
+		delayTestFinish(10000);
+		editor.flushAsync(new HasDataFlushableEditor.FlushCallback() {
+			public void onProgress(int committed, int total) {
+				assertEquals(1000, total);
+			}
+			public void onComplete() {
+				for (int i = 0; i < 1000; i++) {
+					assertEquals("value " + i, beans.get(i).value);
+				}
+				finishTest();
+			}
+		});
+		// nothing is committed until the command runs, but the changes are no longer pending
+		assertNull(beans.get(0).value);
+		assertEquals(0, editor.getPendingChangeCount());
+	}
+
+	public void testFlushFinishesAsyncFlush() {
+		CellTable<Bean> cellTable = new CellTable<Bean>();
+		HasDataFlushableEditor<Bean> editor = HasDataFlushableEditor.of(cellTable);
+		HasDataFlushableEditor<Bean>.PendingFieldUpdateChange<String> updater = editor.new PendingFieldUpdateChange<String>() {
+			@Override
+			public void commit(int index, Bean object, String value) {
+				object.value = value;
+			}
+		};
+		final int[] completed = new int[1];
+		Bean bean = new Bean();
+		updater.update(0, bean, "async");
+		editor.flushAsync(new HasDataFlushableEditor.FlushCallback() {
+			public void onProgress(int committed, int total) {
+			}
+			public void onComplete() {
+				completed[0]++;
+			}
+		});
+		updater.update(0, bean, "sync");
+
+		// the synchronous flush must commit everything, in order, before returning
+		editor.flush();
+		assertEquals("sync", bean.value);
+		assertEquals(1, completed[0]);
+	}
+
+	static class CountingCellTable extends CellTable<Bean> {
+		int rowDataCalls;
+		int rowCountCalls;
+		int lastStart;
+		int lastLength;
+		@Override
+		public void setRowData(int start, List<? extends Bean> values) {
+			rowDataCalls++;
+			lastStart = start;
+			lastLength = values.size();
+			super.setRowData(start, values);
+		}
+		@Override
+		public void setRowCount(int size, boolean isExact) {
+			rowCountCalls++;
+			super.setRowCount(size, isExact);
+		}
+	}
+
+	/**
+	 * Stands in for the driver, which would normally populate each sub-editor.
+	 */
+	public void testChangesDuringAsyncFlushCoalesced() {
+		CellTable<Bean> cellTable = new CellTable<Bean>();
+		HasDataFlushableEditor<Bean> editor = HasDataFlushableEditor.of(cellTable);
+		final List<String> committed = new ArrayList<String>();
+		HasDataFlushableEditor<Bean>.PendingFieldUpdateChange<String> updater = editor.new PendingFieldUpdateChange<String>() {
+			@Override
+			public void commit(int index, Bean object, String value) {
+				object.value = value;
+				committed.add(value);
+			}
+		};
+		Bean bean = new Bean();
+		Bean other = new Bean();
+		updater.update(0, bean, "async");
+		updater.update(1, other, "other");
+		editor.flushAsync(null);
+		// the same cell again, before the async flush has committed it
+		updater.update(0, bean, "sync");
+
+		editor.flush();
+		assertEquals(Arrays.asList("sync", "other"), committed);
+		assertEquals(2, editor.getFlushedDeltas().size());
+		assertSame(bean, editor.getFlushedDeltas().get(0).getRow());
+		assertEquals("sync", editor.getFlushedDeltas().get(0).getNewValue());
+	}
+
+	static class SimpleChain implements EditorChain<Bean, ValueAwareEditor<Bean>> {
+		public void attach(Bean object, ValueAwareEditor<Bean> subEditor) {
+			subEditor.setValue(object);
+		}
+		public void detach(ValueAwareEditor<Bean> subEditor) {
+		}
+		public Bean getValue(ValueAwareEditor<Bean> subEditor) {
+			return ((HasDataFlushableEditor.IndexedEditor<Bean>) subEditor).getValue();
+		}
+	}
+
+	public void testPropertyChangeRedrawsRow() {
+		CountingCellTable cellTable = new CountingCellTable();
+		HasDataFlushableEditor<Bean> editor = HasDataFlushableEditor.of(cellTable);
+		editor.setEditorChain(new SimpleChain());
+		BeanColumns columns = GWT.create(BeanColumns.class);
+		columns.configure(cellTable, editor);
+		editor.setValue(Arrays.asList(new Bean(), new Bean(), new Bean()));
+
+		cellTable.rowDataCalls = 0;
+		editor.onPropertyChange(1, "other");
+		assertEquals(0, cellTable.rowDataCalls);
+
+		editor.onPropertyChange(1, "other", "value");
+		assertEquals(1, cellTable.rowDataCalls);
+		assertEquals(1, cellTable.lastStart);
+		assertEquals(1, cellTable.lastLength);
+	}
+
+	public void testUnchangedRowsNotDrawn() {
+		CountingCellTable cellTable = new CountingCellTable();
+		HasDataFlushableEditor<Bean> editor = HasDataFlushableEditor.of(cellTable);
+		editor.setEditorChain(new SimpleChain());
+		List<Bean> list = new ArrayList<Bean>(Arrays.asList(new Bean(), new Bean(), new Bean()));
+		editor.setValue(list);
+
+		// the same rows are drawn again, as they may have been modified in place
+		cellTable.rowDataCalls = 0;
+		editor.setValue(list);
+		assertEquals(1, cellTable.rowDataCalls);
+		assertEquals(0, cellTable.lastStart);
+		assertEquals(3, cellTable.lastLength);
+		cellTable.rowDataCalls = 0;
+
+		// only the replaced row is drawn
+		editor.getList().set(1, new Bean());
+		assertEquals(1, cellTable.rowDataCalls);
+		assertEquals(1, cellTable.lastStart);
+
+		// removing the last row doesn't move any others, so none are drawn
+		cellTable.rowDataCalls = 0;
+		editor.getList().remove(2);
+		assertEquals(0, cellTable.rowDataCalls);
+		assertEquals(2, cellTable.getRowCount());
+	}
+
+	public void testVersionedRowsDrawn() {
+		CountingCellTable cellTable = new CountingCellTable();
+		HasDataFlushableEditor<Bean> editor = HasDataFlushableEditor.of(cellTable);
+		editor.setEditorChain(new SimpleChain());
+		editor.setVersionProvider(new HasDataFlushableEditor.VersionProvider<Bean>() {
+			public Object getVersion(Bean row) {
+				return row.value;
+			}
+		});
+		List<Bean> list = Arrays.asList(new Bean(), new Bean(), new Bean());
+		editor.setValue(list);
+
+		// modified in place, so only its version changes
+		cellTable.rowDataCalls = 0;
+		list.get(2).value = "changed";
+		editor.setValue(list);
+		assertEquals(1, cellTable.rowDataCalls);
+		assertEquals(2, cellTable.lastStart);
+		assertEquals(1, cellTable.lastLength);
+	}
+
+	public void testSetValueDrawsOnce() {
+		CountingCellTable cellTable = new CountingCellTable();
+		HasDataFlushableEditor<Bean> editor = HasDataFlushableEditor.of(cellTable);
+		editor.setEditorChain(new SimpleChain());
+
+		editor.setValue(Arrays.asList(new Bean(), new Bean(), new Bean()));
+		assertEquals(1, cellTable.rowDataCalls);
+		assertEquals(3, cellTable.getRowCount());
+
+		// replacing the list must set the row count only once
+		cellTable.rowDataCalls = 0;
+		cellTable.rowCountCalls = 0;
+		editor.setValue(Arrays.asList(new Bean(), new Bean()));
+		assertEquals(1, cellTable.rowDataCalls);
+		assertEquals(1, cellTable.rowCountCalls);
+		assertEquals(2, cellTable.getRowCount());
+	}
+}
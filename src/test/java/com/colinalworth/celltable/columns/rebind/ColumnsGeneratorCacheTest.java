@@ -0,0 +1,174 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.rebind;
+
+import java.io.File;
+import java.io.Serializable;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.colinalworth.celltable.columns.rebind.ColumnsGeneratorTimer.DefaultPropertyOracle;
+import com.google.gwt.core.ext.CachedGeneratorResult;
+import com.google.gwt.core.ext.RebindMode;
+import com.google.gwt.core.ext.RebindResult;
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.linker.ArtifactSet;
+import com.google.gwt.dev.cfg.ModuleDef;
+import com.google.gwt.dev.cfg.ModuleDefLoader;
+import com.google.gwt.dev.javac.CachedGeneratorResultImpl;
+import com.google.gwt.dev.javac.CompilationState;
+import com.google.gwt.dev.javac.StandardGeneratorContext;
+import com.google.gwt.dev.util.log.PrintWriterTreeLogger;
+
+/**
+ * Runs {@link ColumnsGenerator} in the JVM, as {@link ColumnsGeneratorTimer} does, with the
+ * result of an earlier run, to check when that result is reused and when the type is generated
+ * again.
+ *
+ * @author colin
+ *
+ */
+public class ColumnsGeneratorCacheTest extends TestCase {
+	private static final String TYPE_NAME = "cache.client.BeanColumns";
+	// the client data key StandardGeneratorContext keeps each generator's version under
+	private static final String VERSION_KEY = "generator-version-id";
+
+	private File dir;
+	private File bean;
+	private ClassLoader oldLoader;
+	private TreeLogger logger;
+	private ModuleDef module;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("columns", "cache");
+		dir.delete();
+		File client = new File(dir, "cache/client");
+		client.mkdirs();
+
+		ColumnsGeneratorTimer.write(new File(dir, "cache/Cache.gwt.xml"),
+				"<module>",
+				"<inherits name='com.colinalworth.celltable.columns.ColumnsCreator' />",
+				"<source path='client' />",
+				"</module>");
+		bean = new File(client, "Bean.java");
+		writeBean("String getName();");
+		ColumnsGeneratorTimer.write(new File(client, "BeanColumns.java"),
+				"package cache.client;",
+				"import com.colinalworth.celltable.columns.client.Columns;",
+				"import com.google.gwt.cell.client.TextCell;",
+				"import com.google.gwt.editor.client.Editor.Path;",
+				"public interface BeanColumns extends Columns<Bean> {",
+				"@Path(\"name\") TextCell name();",
+				"}");
+
+		// a new loader each time, so the module isn't reused from ModuleDefLoader's cache
+		oldLoader = Thread.currentThread().getContextClassLoader();
+		Thread.currentThread().setContextClassLoader(new URLClassLoader(new URL[] {dir.toURI().toURL()}, oldLoader));
+
+		PrintWriterTreeLogger printLogger = new PrintWriterTreeLogger();
+		printLogger.setMaxDetail(TreeLogger.WARN);
+		logger = printLogger;
+		module = ModuleDefLoader.loadFromClassPath(logger, "cache.Cache");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Thread.currentThread().setContextClassLoader(oldLoader);
+		ColumnsGeneratorTimer.delete(dir);
+	}
+
+	public void testReusedUntilDependencyChanges() throws Exception {
+		CompilationState state = module.getCompilationState(logger);
+		StandardGeneratorContext context = createContext(state, null, new DefaultPropertyOracle());
+		RebindResult first = context.runGeneratorIncrementally(logger, ColumnsGenerator.class, TYPE_NAME);
+		assertEquals(RebindMode.USE_ALL_NEW, first.getRebindMode());
+		CachedGeneratorResult cached = toCached(context, first, first.getClientDataMap());
+
+		assertEquals(RebindMode.USE_ALL_CACHED, generate(state, cached, new DefaultPropertyOracle()).getRebindMode());
+		assertEquals(RebindMode.USE_ALL_CACHED, generate(state, cached, new DefaultPropertyOracle()).getRebindMode());
+
+		// change the bean the columns read from, after the cached result was generated
+		writeBean("String getName();", "String getOther();");
+		bean.setLastModified(cached.getTimeGenerated() + 1000);
+		CompilationState changed = module.getCompilationState(logger);
+		assertEquals(RebindMode.USE_ALL_NEW, generate(changed, cached, new DefaultPropertyOracle()).getRebindMode());
+	}
+
+	public void testVersionAndPropertiesInvalidate() throws Exception {
+		CompilationState state = module.getCompilationState(logger);
+		StandardGeneratorContext context = createContext(state, null, new DefaultPropertyOracle());
+		RebindResult first = context.runGeneratorIncrementally(logger, ColumnsGenerator.class, TYPE_NAME);
+		CachedGeneratorResult cached = toCached(context, first, first.getClientDataMap());
+		assertEquals(RebindMode.USE_ALL_CACHED, generate(state, cached, new DefaultPropertyOracle()).getRebindMode());
+
+		// generated by an older version of the generator
+		Map<String, Serializable> oldVersion = new HashMap<String, Serializable>(first.getClientDataMap());
+		oldVersion.put(VERSION_KEY, new ColumnsGenerator().getVersionId() - 1);
+		CachedGeneratorResult outdated = toCached(context, first, oldVersion);
+		assertEquals(RebindMode.USE_ALL_NEW, generate(state, outdated, new DefaultPropertyOracle()).getRebindMode());
+
+		// generated with other values of the deferred binding properties
+		DefaultPropertyOracle instrumented = new DefaultPropertyOracle();
+		instrumented.enabled.add("celltable.columns.instrument");
+		assertEquals(RebindMode.USE_ALL_NEW, generate(state, cached, instrumented).getRebindMode());
+		DefaultPropertyOracle compact = new DefaultPropertyOracle();
+		compact.enabled.add("celltable.columns.compact");
+		assertEquals(RebindMode.USE_ALL_NEW, generate(state, cached, compact).getRebindMode());
+
+		// without client data, nothing can be checked
+		CachedGeneratorResult noClientData = toCached(context, first, new HashMap<String, Serializable>());
+		assertEquals(RebindMode.USE_ALL_NEW, generate(state, noClientData, new DefaultPropertyOracle()).getRebindMode());
+	}
+
+	private RebindResult generate(CompilationState state, CachedGeneratorResult cached, DefaultPropertyOracle properties) throws Exception {
+		return createContext(state, cached, properties).runGeneratorIncrementally(logger, ColumnsGenerator.class, TYPE_NAME);
+	}
+
+	/**
+	 * Creates a context with caching enabled, as the compiler would when generating incrementally.
+	 */
+	private StandardGeneratorContext createContext(CompilationState state, CachedGeneratorResult cached, DefaultPropertyOracle properties) {
+		StandardGeneratorContext context = new StandardGeneratorContext(state, module, null, new ArtifactSet(), false);
+		context.setPropertyOracle(properties);
+		context.setCurrentGenerator(ColumnsGenerator.class);
+		context.setGeneratorResultCachingEnabled(true);
+		context.setCachedGeneratorResult(cached);
+		return context;
+	}
+
+	/**
+	 * Keeps the units the context generated, as the compiler does between compiles.
+	 */
+	private CachedGeneratorResult toCached(StandardGeneratorContext context, RebindResult result, Map<String, Serializable> clientData) {
+		return new CachedGeneratorResultImpl(result.getResultTypeName(), new ArtifactSet(),
+				context.getGeneratedUnitMap(), System.currentTimeMillis(), clientData);
+	}
+
+	private void writeBean(String... methods) throws Exception {
+		String[] lines = new String[methods.length + 3];
+		lines[0] = "package cache.client;";
+		lines[1] = "public interface Bean {";
+		System.arraycopy(methods, 0, lines, 2, methods.length);
+		lines[lines.length - 1] = "}";
+		ColumnsGeneratorTimer.write(bean, lines);
+	}
+}
@@ -0,0 +1,273 @@
+/**
+ *  Copyright 2011 Colin Alworth
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.colinalworth.celltable.columns.rebind;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import com.colinalworth.celltable.columns.rebind.model.ColumnSetModel;
+import com.google.gwt.core.ext.BadPropertyValueException;
+import com.google.gwt.core.ext.ConfigurationProperty;
+import com.google.gwt.core.ext.PropertyOracle;
+import com.google.gwt.core.ext.SelectionProperty;
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.linker.ArtifactSet;
+import com.google.gwt.dev.cfg.ModuleDef;
+import com.google.gwt.dev.cfg.ModuleDefLoader;
+import com.google.gwt.dev.javac.CompilationState;
+import com.google.gwt.dev.javac.StandardGeneratorContext;
+import com.google.gwt.dev.util.log.PrintWriterTreeLogger;
+
+/**
+ * Runs {@link ColumnsGenerator} in the JVM over synthetic Columns interfaces of increasing size,
+ * to check that generation time grows linearly with the number of columns. Each interface mixes
+ * editable, sortable and converted columns, reading paths up to {@link #DEPTH} properties deep,
+ * and generates a table builder.
+ *
+ * For each size, the time to run the whole generator is reported as the best of several runs,
+ * along with the time that run spent in each phase, one tab separated line per size:
+ * <pre>
+ * columns	model_ms	columns_ms	comparators_ms	configure_ms	tableBuilder_ms	other_ms	generate_ms	generate_us_per_column
+ * </pre>
+ * The model phase builds the {@link ColumnSetModel}, and other covers everything not in a named
+ * phase, such as the key provider, export and filter methods. The sources are written to a
+ * temporary directory, which is deleted on exit.
+ * Column counts to run may be passed as arguments. The classpath must include gwt-user, gwt-dev,
+ * and this project's sources.
+ *
+ * @author colin
+ *
+ */
+public class ColumnsGeneratorTimer {
+	private static final int DEPTH = 5;
+	private static final int RUNS = 10;
+	private static final String[] PHASES = {"model", "columns", "comparators", "configure", "tableBuilder", "other"};
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = {100, 200, 400, 800};
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				sizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+
+		PrintWriterTreeLogger logger = new PrintWriterTreeLogger();
+		logger.setMaxDetail(TreeLogger.WARN);
+
+		File dir = File.createTempFile("columns", "timer");
+		dir.delete();
+		try {
+			run(logger, dir, sizes);
+		} finally {
+			delete(dir);
+		}
+	}
+
+	private static void run(TreeLogger logger, File dir, int[] sizes) throws Exception {
+		File gen = new File(dir, "gen");
+		writeSources(dir, sizes);
+
+		ClassLoader loader = new URLClassLoader(new URL[] {dir.toURI().toURL()}, Thread.currentThread().getContextClassLoader());
+		Thread.currentThread().setContextClassLoader(loader);
+
+		long start = System.nanoTime();
+		ModuleDef module = ModuleDefLoader.loadFromClassPath(logger, "timer.Timer");
+		CompilationState state = module.getCompilationState(TreeLogger.NULL);
+		System.err.println("Built TypeOracle in " + (System.nanoTime() - start) / 1000000 + "ms");
+
+		// let the JIT settle before anything is measured
+		for (int size : sizes) {
+			time(logger, state, module, gen, size);
+		}
+
+		StringBuilder header = new StringBuilder("columns");
+		for (String phase : PHASES) {
+			header.append('\t').append(phase).append("_ms");
+		}
+		System.out.println(header + "\tgenerate_ms\tgenerate_us_per_column");
+		for (int size : sizes) {
+			// keep the phases of the fastest run, so they add up to its total
+			double[] best = null;
+			for (int run = 0; run < RUNS; run++) {
+				double[] timings = time(logger, state, module, gen, size);
+				if (best == null || timings[PHASES.length] < best[PHASES.length]) {
+					best = timings;
+				}
+			}
+			StringBuilder line = new StringBuilder(String.valueOf(size));
+			for (double timing : best) {
+				line.append(String.format("\t%1$.2f", timing));
+			}
+			System.out.println(line + String.format("\t%1$.1f", best[PHASES.length] * 1000 / size));
+		}
+	}
+
+	/**
+	 * Runs the generator for the interface with the given number of columns, in a new
+	 * GeneratorContext.
+	 * @return the time taken in each of {@link #PHASES}, then by the whole generator, in milliseconds
+	 */
+	private static double[] time(TreeLogger logger, CompilationState state, ModuleDef module, File gen, int size) throws Exception {
+		String typeName = "timer.client.Columns" + size;
+		StandardGeneratorContext context = new StandardGeneratorContext(state, module, gen, new ArtifactSet(), false);
+		context.setPropertyOracle(new DefaultPropertyOracle());
+		context.setCurrentGenerator(ColumnsGenerator.class);
+
+		ColumnsGenerator generator = new ColumnsGenerator();
+		generator.phaseTimes = new HashMap<String, Long>();
+		long start = System.nanoTime();
+		generator.generateIncrementally(logger, context, typeName);
+		long generate = System.nanoTime() - start;
+
+		double[] timings = new double[PHASES.length + 1];
+		for (int i = 0; i < PHASES.length; i++) {
+			Long phase = generator.phaseTimes.get(PHASES[i]);
+			timings[i] = phase == null ? 0 : phase / 1000000.0;
+		}
+		timings[PHASES.length] = generate / 1000000.0;
+		return timings;
+	}
+
+	static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Writes a module with a chain of bean types DEPTH deep, and a Columns interface of each size
+	 * reading from them.
+	 */
+	private static void writeSources(File dir, int[] sizes) throws IOException {
+		File client = new File(dir, "timer/client");
+		client.mkdirs();
+
+		write(new File(dir, "timer/Timer.gwt.xml"),
+				"<module>",
+				"<inherits name='com.colinalworth.celltable.columns.ColumnsCreator' />",
+				"<source path='client' />",
+				"</module>");
+
+		for (int level = 0; level <= DEPTH; level++) {
+			write(new File(client, "Level" + level + ".java"),
+					"package timer.client;",
+					"public interface Level" + level + " {",
+					"String getName();",
+					"void setName(String name);",
+					"int getCount();",
+					"void setCount(int count);",
+					"java.util.Date getDate();",
+					level < DEPTH ? "Level" + (level + 1) + " getNext();" : "",
+					"}");
+		}
+
+		for (int size : sizes) {
+			PrintWriter pw = new PrintWriter(new FileWriter(new File(client, "Columns" + size + ".java")));
+			pw.println("package timer.client;");
+			pw.println("import com.colinalworth.celltable.columns.client.Columns;");
+			pw.println("import com.colinalworth.celltable.columns.client.converters.IntegerConverter;");
+			pw.println("import com.google.gwt.cell.client.*;");
+			pw.println("import com.google.gwt.editor.client.Editor.Path;");
+			pw.println("@Columns.GeneratedTableBuilder");
+			pw.println("public interface Columns" + size + " extends Columns<Level0> {");
+			for (int i = 0; i < size; i++) {
+				StringBuilder path = new StringBuilder();
+				for (int level = 0; level < i % (DEPTH + 1); level++) {
+					path.append("next.");
+				}
+				switch (i % 3) {
+				case 0:
+					pw.println("@Editable @Sortable @Path(\"" + path + "name\") EditTextCell column" + i + "();");
+					break;
+				case 1:
+					pw.println("@Editable @ConvertedWith(IntegerConverter.class) @Path(\"" + path + "count\") EditTextCell column" + i + "();");
+					break;
+				default:
+					pw.println("@Sortable @Path(\"" + path + "date\") DateCell column" + i + "();");
+				}
+			}
+			pw.println("}");
+			pw.close();
+		}
+	}
+
+	static void write(File file, String... lines) throws IOException {
+		PrintWriter pw = new PrintWriter(new FileWriter(file));
+		for (String line : lines) {
+			pw.println(line);
+		}
+		pw.close();
+	}
+
+	/**
+	 * Gives each celltable.columns property its default of false, unless added to
+	 * {@link #enabled}, so the generator runs as it would for a module that doesn't set them.
+	 */
+	static class DefaultPropertyOracle implements PropertyOracle {
+		final Set<String> enabled = new HashSet<String>();
+
+		public ConfigurationProperty getConfigurationProperty(String propertyName) throws BadPropertyValueException {
+			throw new BadPropertyValueException(propertyName);
+		}
+		@SuppressWarnings("deprecation")
+		public String getPropertyValue(TreeLogger logger, String propertyName) throws BadPropertyValueException {
+			return getSelectionProperty(logger, propertyName).getCurrentValue();
+		}
+		@SuppressWarnings("deprecation")
+		public String[] getPropertyValueSet(TreeLogger logger, String propertyName) throws BadPropertyValueException {
+			return getSelectionProperty(logger, propertyName).getPossibleValues().toArray(new String[0]);
+		}
+		public SelectionProperty getSelectionProperty(TreeLogger logger, final String propertyName) throws BadPropertyValueException {
+			if (!propertyName.startsWith("celltable.columns.")) {
+				throw new BadPropertyValueException(propertyName);
+			}
+			return new SelectionProperty() {
+				public String getName() {
+					return propertyName;
+				}
+				public String getCurrentValue() {
+					return String.valueOf(enabled.contains(propertyName));
+				}
+				public String getFallbackValue() {
+					return "false";
+				}
+				public List<? extends Set<String>> getFallbackValues(String value) {
+					return null;
+				}
+				public SortedSet<String> getPossibleValues() {
+					return new TreeSet<String>(Arrays.asList("false", "true"));
+				}
+			};
+		}
+	}
+}